@@ -1,6 +1,8 @@
 package com.godaddy.sonar.ruby;
 
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.Ruby;
+import com.godaddy.sonar.ruby.core.RubyFileCatalog;
 import com.godaddy.sonar.ruby.core.RubySourceCodeColorizer;
 import com.godaddy.sonar.ruby.core.profiles.SonarWayProfile;
 import com.godaddy.sonar.ruby.metricfu.*;
@@ -34,20 +36,26 @@ public final class RubyPlugin extends SonarPlugin {
     public static final String NAME_REPOSITORY_ROODI = "Roodi";
 
     public static final String SIMPLECOVRCOV_REPORT_PATH_PROPERTY = "sonar.simplecovrcov.reportPath";
+    public static final String SIMPLECOVRCOV_PATH_PREFIXES_PROPERTY = "sonar.simplecovrcov.pathPrefixes";
     public static final String COVERAGE_TEST_SUITES_PROPERTY = "sonar.ruby.coverage.testSuites";
 
     public static final String METRICFU_REPORT_PATH_PROPERTY = "sonar.metricfu.reportPath";
     public static final String METRICFU_COMPLEXITY_METRIC_PROPERTY = "sonar.metricfu.complexityMetric";
+    public static final String METRICFU_THREADS_PROPERTY = "sonar.ruby.metricfu.threads";
+    public static final String BASE_METRICS_THREADS_PROPERTY = "sonar.ruby.baseMetrics.threads";
+    public static final String DUPLICATIONS_ENGINE_PROPERTY = "sonar.ruby.duplications.engine";
+    public static final String DUPLICATIONS_MINIMUM_TOKENS_PROPERTY = "sonar.ruby.duplications.minimumTokens";
 
     public List<Object> getExtensions() {
         List<Object> extensions = new ArrayList<Object>();
         extensions.add(Ruby.class);
-        // FIXME add back code duplication metrics once it's fixed
-        // extensions.add(RubyCPDMapping.class);
+        extensions.add(RubyCPDMapping.class);
         extensions.add(DefaultCoverageSettings.class);
         extensions.add(SimpleCovRcovSensor.class);
         extensions.add(CoverageReportFileAnalyzerImpl.class);
         extensions.add(MetricfuYamlParser.class);
+        extensions.add(RubyFileCatalog.class);
+        extensions.add(FileFingerprintStore.class);
         extensions.add(RubySourceCodeColorizer.class);
         extensions.add(RubySensor.class);
         extensions.add(MetricfuComplexitySensor.class);
@@ -75,12 +83,24 @@ public final class RubyPlugin extends SonarPlugin {
                 .category(CoreProperties.CATEGORY_CODE_COVERAGE)
                 .subCategory("Ruby Coverage")
                 .name("SimpleCovRcov Report path")
-                .description("Path (absolute or relative) to SimpleCovRcov json report file.")
+                .description("Path (absolute or relative) to SimpleCovRcov json report file, or comma delimited "
+                        + "paths and glob patterns (e.g. coverage/shard-*/.resultset.json) of reports to merge.")
                 .defaultValue("coverage/.resultset.json")
                 .onQualifiers(Qualifiers.PROJECT)
                 .build();
         extensions.add(simplecovrcovReportPath);
 
+        PropertyDefinition simplecovrcovPathPrefixes = PropertyDefinition.builder(SIMPLECOVRCOV_PATH_PREFIXES_PROPERTY)
+                .category(CoreProperties.CATEGORY_CODE_COVERAGE)
+                .subCategory("Ruby Coverage")
+                .name("SimpleCovRcov path prefixes")
+                .description("Comma delimited from=to entries replacing the root a report was produced in (from) "
+                        + "by a local directory (to, absolute or relative, the project base directory if empty), "
+                        + "e.g. /usr/src/app= for a report produced in a container.")
+                .onQualifiers(Qualifiers.PROJECT)
+                .build();
+        extensions.add(simplecovrcovPathPrefixes);
+
         PropertyDefinition coverageTestSuitesProperty = PropertyDefinition.builder(COVERAGE_TEST_SUITES_PROPERTY)
                 .category(CoreProperties.CATEGORY_CODE_COVERAGE)
                 .subCategory("Ruby Coverage")
@@ -109,6 +129,53 @@ public final class RubyPlugin extends SonarPlugin {
                 .build();
         extensions.add(ComplexityMetric);
 
+        PropertyDefinition metricfuThreads = PropertyDefinition.builder(METRICFU_THREADS_PROPERTY)
+                .category(CoreProperties.CATEGORY_CODE_COVERAGE)
+                .subCategory("Ruby Coverage")
+                .name("MetricFu issue threads")
+                .description("Number of threads collecting the MetricFu issues of the files, 1 to collect them sequentially.")
+                .defaultValue("1")
+                .onQualifiers(Qualifiers.PROJECT)
+                .type(PropertyType.INTEGER)
+                .build();
+        extensions.add(metricfuThreads);
+
+        PropertyDefinition baseMetricsThreads = PropertyDefinition.builder(BASE_METRICS_THREADS_PROPERTY)
+                .category(CoreProperties.CATEGORY_CODE_COVERAGE)
+                .subCategory("Ruby Coverage")
+                .name("Base metrics threads")
+                .description("Number of threads counting the lines of code and comments of the ruby files, 1 to count them sequentially.")
+                .defaultValue("1")
+                .onQualifiers(Qualifiers.PROJECT)
+                .type(PropertyType.INTEGER)
+                .build();
+        extensions.add(baseMetricsThreads);
+
+        PropertyDefinition duplicationsEngine = PropertyDefinition.builder(DUPLICATIONS_ENGINE_PROPERTY)
+                .category(CoreProperties.CATEGORY_CODE_COVERAGE)
+                .subCategory("Ruby Coverage")
+                .name("Duplications engine")
+                .description("Detector of the duplicated code, Flay from the MetricFu report, CPD on the ruby lexer tokens, "
+                        + "CPD on the normalized tokens saved by the sensor or rolling hashes of the ruby lexer tokens with Rabin-Karp. "
+                        + "Flay is kept by default, the other engines don't need the flay section of the MetricFu report.")
+                .defaultValue("Flay")
+                .onQualifiers(Qualifiers.PROJECT)
+                .type(PropertyType.SINGLE_SELECT_LIST)
+                .options(Arrays.asList("CPD", "Tokens", "Rabin-Karp", "Flay"))
+                .build();
+        extensions.add(duplicationsEngine);
+
+        PropertyDefinition duplicationsMinimumTokens = PropertyDefinition.builder(DUPLICATIONS_MINIMUM_TOKENS_PROPERTY)
+                .category(CoreProperties.CATEGORY_CODE_COVERAGE)
+                .subCategory("Ruby Coverage")
+                .name("Duplications minimum tokens")
+                .description("Minimum number of tokens of a duplicated block detected by the Rabin-Karp engine.")
+                .defaultValue("100")
+                .onQualifiers(Qualifiers.PROJECT)
+                .type(PropertyType.INTEGER)
+                .build();
+        extensions.add(duplicationsMinimumTokens);
+
         return extensions;
     }
 }
@@ -1,11 +1,10 @@
 package com.godaddy.sonar.ruby;
 
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.Ruby;
-import com.godaddy.sonar.ruby.core.RubyRecognizer;
-import com.godaddy.sonar.ruby.parsers.CommentCountParser;
+import com.godaddy.sonar.ruby.parsers.LineMetrics;
+import com.godaddy.sonar.ruby.parsers.LineMetricsScanner;
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.FileSystem;
@@ -13,18 +12,34 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
-import org.sonar.squidbridge.measures.Metric;
-import org.sonar.squidbridge.text.Source;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 
-import java.io.Reader;
-import java.io.StringReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class RubySensor implements Sensor {
+    private static final Logger LOG = Loggers.get(RubySensor.class);
+
+    private static final String FINGERPRINT_SECTION = "base-metrics";
+    private static final int STORED_LINE_METRICS_LENGTH = 4 * Integer.BYTES;
+
+    private Settings settings;
     private FileSystem fileSystem;
+    private FileFingerprintStore fingerprintStore;
 
-    public RubySensor(Settings settings, FileSystem fileSystem) {
+    public RubySensor(Settings settings, FileSystem fileSystem, FileFingerprintStore fingerprintStore) {
+        this.settings = settings;
         this.fileSystem = fileSystem;
+        this.fingerprintStore = fingerprintStore;
     }
 
     @Override
@@ -38,25 +53,91 @@ public class RubySensor implements Sensor {
     }
 
     protected void computeBaseMetrics(SensorContext sensorContext, Project project) {
-        Reader reader = null;
         List<InputFile> inputFiles = Lists.newArrayList(fileSystem.inputFiles(fileSystem.predicates().hasLanguage(Ruby.KEY)));
+        Charset encoding = fileSystem.encoding();
+        int threads = Math.min(settings.getInt(RubyPlugin.BASE_METRICS_THREADS_PROPERTY), inputFiles.size());
+
+        // the line metrics of the files unchanged since the previous analysis are reused
+        FileFingerprintStore.Section fingerprints = fingerprintStore.section(FINGERPRINT_SECTION, encoding.name());
 
-        for (InputFile inputFile : inputFiles) {
-            try {
-                reader = new StringReader(FileUtils.readFileToString(inputFile.file(), fileSystem.encoding().name()));
-                Source source = new Source(reader, new RubyRecognizer());
-                sensorContext.saveMeasure(inputFile, CoreMetrics.NCLOC, (double) source.getMeasure(Metric.LINES_OF_CODE));
-
-                int numCommentLines = CommentCountParser.countLinesOfComment(inputFile.file());
-                sensorContext.saveMeasure(inputFile, CoreMetrics.COMMENT_LINES, (double) numCommentLines);
-                sensorContext.saveMeasure(inputFile, CoreMetrics.FILES, 1.0);
-                sensorContext.saveMeasure(inputFile, CoreMetrics.CLASSES, 1.0);
-            } catch (Exception e) {
-                throw new IllegalStateException("Error computing base metrics for project.", e);
-            } finally {
-                IOUtils.closeQuietly(reader);
+        // lines of code and comment lines are counted in a single read of each file
+        if (threads <= 1) {
+            LineMetricsScanner scanner = new LineMetricsScanner();
+            for (InputFile inputFile : inputFiles) {
+                saveMeasures(inputFile, scan(scanner, inputFile, encoding, fingerprints), sensorContext);
             }
+            fingerprints.save();
+            return;
         }
+
+        // scan the files concurrently, with a scanner per worker thread, the
+        // measures are saved by this thread only, in the input files order
+        LOG.info("RubySensor: computing base metrics using " + threads + " threads.");
+        ThreadLocal<LineMetricsScanner> scanners = ThreadLocal.withInitial(LineMetricsScanner::new);
+        ExecutorService executor = Executors.newWorkStealingPool(threads);
+        try {
+            List<Future<LineMetrics>> results = new ArrayList<>(inputFiles.size());
+            for (final InputFile inputFile : inputFiles) {
+                results.add(executor.submit(() -> scan(scanners.get(), inputFile, encoding, fingerprints)));
+            }
+            for (int i = 0; i < inputFiles.size(); i++) {
+                saveMeasures(inputFiles.get(i), await(results.get(i)), sensorContext);
+            }
+            fingerprints.save();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static LineMetrics scan(LineMetricsScanner scanner, InputFile inputFile, Charset encoding,
+                                    FileFingerprintStore.Section fingerprints) {
+        File file = inputFile.file();
+        byte[] stored = fingerprints.get(file);
+        if (stored != null && stored.length == STORED_LINE_METRICS_LENGTH) {
+            ByteBuffer buffer = ByteBuffer.wrap(stored);
+            return new LineMetrics(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+        try {
+            // the file is fingerprinted from the bytes scanned, rather than read again
+            FileFingerprintStore.Fingerprint fingerprint = new FileFingerprintStore.Fingerprint(file);
+            LineMetrics lineMetrics = scanner.scan(file, encoding, fingerprint.digest());
+            fingerprints.put(file, fingerprint, ByteBuffer.allocate(STORED_LINE_METRICS_LENGTH)
+                    .putInt(lineMetrics.getLines())
+                    .putInt(lineMetrics.getBlankLines())
+                    .putInt(lineMetrics.getCommentLines())
+                    .putInt(lineMetrics.getLinesOfCode())
+                    .array());
+            return lineMetrics;
+        } catch (IOException e) {
+            throw new IllegalStateException("Error computing base metrics for project.", e);
+        }
+    }
+
+    /**
+     * Waits for the line metrics of a file
+     *
+     * @param result the pending file line metrics
+     * @return the file line metrics
+     */
+    private static LineMetrics await(Future<LineMetrics> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing base metrics for project.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error computing base metrics for project.", e.getCause());
+        }
+    }
+
+    private static void saveMeasures(InputFile inputFile, LineMetrics lineMetrics, SensorContext sensorContext) {
+        sensorContext.saveMeasure(inputFile, CoreMetrics.NCLOC, (double) lineMetrics.getLinesOfCode());
+        sensorContext.saveMeasure(inputFile, CoreMetrics.COMMENT_LINES, (double) lineMetrics.getCommentLines());
+        sensorContext.saveMeasure(inputFile, CoreMetrics.FILES, 1.0);
+        sensorContext.saveMeasure(inputFile, CoreMetrics.CLASSES, 1.0);
     }
 
     @Override
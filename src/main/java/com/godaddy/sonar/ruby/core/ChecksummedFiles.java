@@ -0,0 +1,155 @@
+package com.godaddy.sonar.ruby.core;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the files the plugin keeps from an analysis to the next one, e.g. the fingerprint store and
+ * the metricfu report cache. A file is replaced at once when written, and only read back when it has the
+ * expected format and its payload is complete and unaltered.
+ * <p>
+ * File layout: magic, format version, payload length, payload CRC32 and the payload.
+ */
+public final class ChecksummedFiles {
+    private static final Logger LOG = Loggers.get(ChecksummedFiles.class);
+
+    /**
+     * The modification time resolution of the coarsest file systems (FAT)
+     */
+    public static final long MODIFICATION_TIME_RESOLUTION = 2000L;
+
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 8;
+
+    private ChecksummedFiles() {
+    }
+
+    /**
+     * Tells whether the modification time of a file can be trusted to detect its changes, i.e. whether any
+     * change since it was fingerprinted would have modified it
+     *
+     * @param lastModified  the modification time of the file when it was fingerprinted
+     * @param fingerprinted the time the file was fingerprinted
+     * @return false if the file may have changed since, with the same modification time
+     */
+    public static boolean isTrusted(long lastModified, long fingerprinted) {
+        return lastModified + MODIFICATION_TIME_RESOLUTION <= fingerprinted;
+    }
+
+    /**
+     * Writes a file, replacing any previous one at once so that readers never see a partial file
+     *
+     * @param file    the file to write
+     * @param magic   the magic number of the kind of file
+     * @param version the format version of the payload
+     * @param payload the payload
+     * @throws IOException when the file could not be written
+     */
+    public static void write(File file, int magic, int version, ByteArrayOutputStream payload) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory '" + directory.getPath() + "'.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray(), 0, payload.size());
+
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                output.writeInt(magic);
+                output.writeInt(version);
+                output.writeInt(payload.size());
+                output.writeLong(crc.getValue());
+                payload.writeTo(output);
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (tempFile.exists() && !tempFile.delete()) {
+                LOG.debug("Unable to delete file '" + tempFile.getPath() + "'.");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the payload of a file, into the heap rather than mapped: a mapping would keep the file open until
+     * garbage collected and prevent it from being replaced on some platforms
+     *
+     * @param file        the file to read
+     * @param magic       the magic number of the kind of file
+     * @param version     the expected format version of the payload
+     * @param description the description of the kind of file, for the logs
+     * @return the payload, or null if the file is missing, of another format or corrupted
+     * @throws IOException when the file could not be read
+     */
+    public static ByteBuffer read(File file, int magic, int version, String description) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        if (file.length() < HEADER_LENGTH || file.length() > Integer.MAX_VALUE) {
+            LOG.warn("Ignoring corrupted " + description + " '" + file.getPath() + "'.");
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.getInt() != magic || buffer.getInt() != version) {
+            LOG.debug("Ignoring " + description + " '" + file.getPath() + "' of another format.");
+            return null;
+        }
+        int length = buffer.getInt();
+        long checksum = buffer.getLong();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if (length != buffer.remaining() || crc.getValue() != checksum) {
+            LOG.warn("Ignoring corrupted " + description + " '" + file.getPath() + "'.");
+            return null;
+        }
+        return buffer.slice();
+    }
+
+    /**
+     * Reads the start of the payload of a file without reading the rest of it nor verifying its checksum, e.g. to
+     * read a header the payload starts with
+     *
+     * @param file    the file to read
+     * @param magic   the magic number of the kind of file
+     * @param version the expected format version of the payload
+     * @param length  the length of the payload start
+     * @return the payload start, or null if the file is missing, of another format or shorter
+     * @throws IOException when the file could not be read
+     */
+    public static ByteBuffer readStart(File file, int magic, int version, int length) throws IOException {
+        if (file.length() < HEADER_LENGTH + length) {
+            return null;
+        }
+        byte[] start = new byte[HEADER_LENGTH + length];
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            input.readFully(start);
+        } catch (EOFException e) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(start);
+        if (buffer.getInt() != magic || buffer.getInt() != version) {
+            return null;
+        }
+        buffer.position(HEADER_LENGTH);
+        return buffer.slice();
+    }
+}
@@ -0,0 +1,396 @@
+package com.godaddy.sonar.ruby.core;
+
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Persists the fingerprints of the analyzed files along with the results computed for them, so that
+ * the next analyses reuse the results of the unchanged files instead of computing them again.
+ * <p>
+ * The results are stored by section, one file per section under the working directory. A section file is
+ * only reused when it was written by the same plugin version for the same context, i.e. the settings the
+ * results depend on. A file is unchanged when its size and modification time match its fingerprint; its
+ * SHA-256 digest is compared too when its modification time differs or is too close to the time it was
+ * fingerprinted to tell a later change apart.
+ * <p>
+ * The digest of a file is taken from the bytes read by the caller computing its result, see {@link Fingerprint},
+ * and shared by all of the sections, so that a file is not read again only to be fingerprinted.
+ * <p>
+ * Section files are written by {@link ChecksummedFiles}, their payload holds the plugin version, the context and
+ * the entries (path, size, modification time, fingerprint time, digest and result).
+ * The sections are written back when the analysis ends, without the entries of the files no longer analyzed.
+ */
+@BatchSide
+public class FileFingerprintStore {
+    private static final Logger LOG = Loggers.get(FileFingerprintStore.class);
+
+    static final String CACHE_DIR = "ruby-cache";
+    static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x52465053;
+    private static final int DIGEST_LENGTH = 32;
+
+    private final FileSystem fileSystem;
+    private final String pluginVersion;
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+
+    // by file, the latest digest of the analysis, shared by the sections
+    private final Map<String, Entry> digests = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new fingerprint store in the working directory of the analyzed module
+     *
+     * @param fileSystem the project analyzed file system object
+     */
+    public FileFingerprintStore(FileSystem fileSystem) {
+        this(fileSystem, pluginVersion());
+    }
+
+    FileFingerprintStore(FileSystem fileSystem, String pluginVersion) {
+        this.fileSystem = fileSystem;
+        this.pluginVersion = pluginVersion;
+    }
+
+    /**
+     * Gives a section of the store, loading its results of the previous analysis on the first request
+     *
+     * @param name    the section name, e.g. the kind of results it holds
+     * @param context the settings the results depend on, the previous results are discarded if they differ
+     * @return the section, which never holds any result when there's no working directory
+     */
+    public synchronized Section section(String name, String context) {
+        Section section = sections.get(name);
+        if (section == null || !section.context.equals(context)) {
+            File workDir = fileSystem.workDir();
+            section = new Section(context, workDir != null ? new File(new File(workDir, CACHE_DIR), "fingerprints-" + name + ".bin") : null);
+            section.load();
+            sections.put(name, section);
+        }
+        return section;
+    }
+
+    /**
+     * Writes the modified sections to their files
+     */
+    public synchronized void save() {
+        for (Section section : sections.values()) {
+            section.save();
+        }
+    }
+
+    /**
+     * Writes the modified sections when the analysis ends, called by the container
+     */
+    public void stop() {
+        save();
+    }
+
+    /**
+     * The fingerprint of a file taken while the file is read to compute its result: the size and modification
+     * time of the file before the read, and the digest of the bytes read. A change of the file during the read
+     * is then caught by the next analysis, rather than the result being stored for the changed file.
+     */
+    public static final class Fingerprint {
+        private final long size;
+        private final long lastModified;
+        private final long fingerprinted;
+        private final MessageDigest digest;
+
+        /**
+         * Starts fingerprinting a file, to be done right before reading it
+         *
+         * @param file the file about to be read
+         */
+        public Fingerprint(File file) {
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+            this.fingerprinted = System.currentTimeMillis();
+            this.digest = newDigest();
+        }
+
+        /**
+         * @return the digest to update with all of the bytes of the file, in their order
+         */
+        public MessageDigest digest() {
+            return digest;
+        }
+    }
+
+    /**
+     * The results of one kind, by file, safe to use from several threads
+     */
+    public final class Section {
+        private final String context;
+        private final File cacheFile;
+        private volatile Map<String, Entry> previous = Collections.emptyMap();
+        private final Map<String, Entry> current = new ConcurrentHashMap<>();
+        private volatile boolean modified = false;
+
+        private Section(String context, File cacheFile) {
+            this.context = context;
+            this.cacheFile = cacheFile;
+        }
+
+        /**
+         * Gives the result computed for a file by a previous analysis
+         *
+         * @param file the analyzed file
+         * @return the result or null if the file is new, changed or its result was never stored
+         */
+        public byte[] get(File file) {
+            if (cacheFile == null) {
+                return null;
+            }
+            String path = file.getAbsolutePath();
+            Entry entry = current.get(path);
+            if (entry == null) {
+                entry = previous.get(path);
+            }
+            if (entry == null || entry.size != file.length()) {
+                return null;
+            }
+
+            // only trust the modification time when any later change would have modified it
+            long lastModified = file.lastModified();
+            if (lastModified != entry.lastModified || !ChecksummedFiles.isTrusted(lastModified, entry.fingerprinted)) {
+                Entry digest;
+                try {
+                    digest = digest(file);
+                } catch (IOException e) {
+                    LOG.debug("Unable to fingerprint file '" + path + "'.", e);
+                    return null;
+                }
+                if (digest.size != entry.size || !Arrays.equals(digest.digest, entry.digest)) {
+                    return null;
+                }
+                entry = new Entry(digest.size, digest.lastModified, digest.fingerprinted, digest.digest, entry.result);
+                modified = true;
+            }
+            current.put(path, entry);
+            return entry.result;
+        }
+
+        /**
+         * Stores the result computed from the content of a file along with the fingerprint taken while reading it
+         *
+         * @param file        the analyzed file
+         * @param fingerprint the fingerprint of the file, its digest updated with all of the bytes read
+         * @param result      the result to reuse while the file is unchanged
+         */
+        public void put(File file, Fingerprint fingerprint, byte[] result) {
+            Entry digest = new Entry(fingerprint.size, fingerprint.lastModified, fingerprint.fingerprinted, fingerprint.digest.digest(), null);
+            String path = file.getAbsolutePath();
+            digests.put(path, digest);
+            if (cacheFile != null) {
+                current.put(path, new Entry(digest.size, digest.lastModified, digest.fingerprinted, digest.digest, result));
+                modified = true;
+            }
+        }
+
+        /**
+         * Stores a result computed for a file without reading it, e.g. from a report, along with the fingerprint
+         * already taken by another section, the file is only read to fingerprint it if no section did
+         *
+         * @param file   the analyzed file
+         * @param result the result to reuse while the file is unchanged
+         */
+        public void put(File file, byte[] result) {
+            if (cacheFile == null) {
+                return;
+            }
+            String path = file.getAbsolutePath();
+            try {
+                Entry digest = digest(file);
+                current.put(path, new Entry(digest.size, digest.lastModified, digest.fingerprinted, digest.digest, result));
+                modified = true;
+            } catch (IOException e) {
+                LOG.debug("Unable to fingerprint file '" + path + "'.", e);
+            }
+        }
+
+        /**
+         * Writes the section to its file if results were stored or files were removed since it was loaded
+         */
+        public synchronized void save() {
+            if (cacheFile == null || (!modified && current.size() == previous.size())) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream(8192);
+                DataOutputStream payloadOutput = new DataOutputStream(payload);
+                writeBytes(payloadOutput, pluginVersion.getBytes(StandardCharsets.UTF_8));
+                writeBytes(payloadOutput, context.getBytes(StandardCharsets.UTF_8));
+                payloadOutput.writeInt(current.size());
+                for (Map.Entry<String, Entry> fileEntry : current.entrySet()) {
+                    Entry entry = fileEntry.getValue();
+                    writeBytes(payloadOutput, fileEntry.getKey().getBytes(StandardCharsets.UTF_8));
+                    payloadOutput.writeLong(entry.size);
+                    payloadOutput.writeLong(entry.lastModified);
+                    payloadOutput.writeLong(entry.fingerprinted);
+                    payloadOutput.write(entry.digest);
+                    writeBytes(payloadOutput, entry.result);
+                }
+                payloadOutput.flush();
+                ChecksummedFiles.write(cacheFile, MAGIC, FORMAT_VERSION, payload);
+                previous = new HashMap<>(current);
+                modified = false;
+                LOG.debug("Saved " + current.size() + " file fingerprints to '" + cacheFile.getPath() + "'.");
+            } catch (IOException e) {
+                LOG.warn("Unable to write fingerprint store file '" + cacheFile.getPath() + "'.", e);
+            }
+        }
+
+        private void load() {
+            if (cacheFile == null) {
+                return;
+            }
+            try {
+                ByteBuffer buffer = ChecksummedFiles.read(cacheFile, MAGIC, FORMAT_VERSION, "fingerprint store file");
+                if (buffer == null) {
+                    return;
+                }
+
+                // the results of another plugin version or context may differ
+                String version = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                String previousContext = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                if (!version.equals(pluginVersion) || !previousContext.equals(context)) {
+                    LOG.debug("Ignoring stale fingerprint store file '" + cacheFile.getPath() + "'.");
+                    return;
+                }
+
+                int count = buffer.getInt();
+                Map<String, Entry> entries = new HashMap<>(Math.max(16, count * 2));
+                for (int i = 0; i < count; i++) {
+                    String path = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                    long size = buffer.getLong();
+                    long lastModified = buffer.getLong();
+                    long fingerprinted = buffer.getLong();
+                    byte[] digest = new byte[DIGEST_LENGTH];
+                    buffer.get(digest);
+                    entries.put(path, new Entry(size, lastModified, fingerprinted, digest, readBytes(buffer)));
+                }
+                previous = entries;
+                LOG.debug("Loaded " + count + " file fingerprints from '" + cacheFile.getPath() + "'.");
+            } catch (IOException e) {
+                LOG.warn("Unable to read fingerprint store file '" + cacheFile.getPath() + "'.", e);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                LOG.warn("Ignoring corrupted fingerprint store file '" + cacheFile.getPath() + "'.", e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final long fingerprinted;
+        private final byte[] digest;
+        private final byte[] result;
+
+        private Entry(long size, long lastModified, long fingerprinted, byte[] digest, byte[] result) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprinted = fingerprinted;
+            this.digest = digest;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Gives the digest of a file, the one taken by a section of this analysis while the file is unchanged
+     *
+     * @param file the file
+     * @return the size, modification time and digest of the file, without result
+     * @throws IOException when the file could not be read
+     */
+    private Entry digest(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        Entry digest = digests.get(path);
+        if (digest != null && digest.size == size && digest.lastModified == lastModified) {
+            return digest;
+        }
+
+        long fingerprinted = System.currentTimeMillis();
+        MessageDigest sha = newDigest();
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                sha.update(buffer, 0, read);
+            }
+        }
+        digest = new Entry(size, lastModified, fingerprinted, sha.digest(), null);
+        digests.put(path, digest);
+        return digest;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer input) {
+        int length = input.getInt();
+        if (length < 0 || length > input.remaining()) {
+            throw new IllegalArgumentException("Invalid stored length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads the version and build date of the plugin from the manifest of its jar
+     *
+     * @return the plugin version, "unknown" when the classes are not loaded from the plugin jar
+     */
+    private static String pluginVersion() {
+        try {
+            File jar = new File(FileFingerprintStore.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (jar.isFile()) {
+                try (JarFile jarFile = new JarFile(jar)) {
+                    Manifest manifest = jarFile.getManifest();
+                    if (manifest != null) {
+                        Attributes attributes = manifest.getMainAttributes();
+                        return attributes.getValue("Plugin-Version") + "/" + attributes.getValue("Plugin-BuildDate");
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOG.debug("Unable to read the plugin version.", e);
+        }
+        return "unknown";
+    }
+}
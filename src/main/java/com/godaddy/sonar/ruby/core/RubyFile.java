@@ -32,25 +32,46 @@ public class RubyFile extends Resource {
             throw new IllegalArgumentException("File cannot be null");
         }
 
+        RelativePath relativePath = null;
+        if (sourceDirs != null) {
+            PathResolver resolver = new PathResolver();
+            Collection<File> colSrcDirs = toFileCollection(sourceDirs);
+            relativePath = resolver.relativePath(colSrcDirs, file);
+        }
+        init(file, relativePath != null ? relativePath.dir() : null, relativePath != null ? relativePath.path() : null);
+    }
+
+    /**
+     * Instantiates the resource of a file already resolved against the source dirs
+     *
+     * @param file the file
+     * @param dir  the source dir the file was resolved against, null if none
+     * @param path the path of the file relative to the source dir
+     */
+    RubyFile(File file, File dir, String path) {
+        super();
+
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        init(file, dir, path);
+    }
+
+    private void init(File file, File dir, String path) {
         String dirName = null;
         this.filename = StringUtils.substringBeforeLast(file.getName(), ".");
 
         this.packageKey = RubyPackage.DEFAULT_PACKAGE_NAME;
 
-        if (sourceDirs != null) {
-            PathResolver resolver = new PathResolver();
-            Collection<File> colSrcDirs = toFileCollection(sourceDirs);
-            RelativePath relativePath = resolver.relativePath(colSrcDirs, file);
-            if (relativePath != null) {
-                dirName = relativePath.dir().toString();
+        if (dir != null) {
+            dirName = dir.toString();
 
-                this.filename = StringUtils.substringBeforeLast(relativePath.path(), ".");
+            this.filename = StringUtils.substringBeforeLast(path, ".");
 
-                if (dirName.indexOf(File.separator) >= 0) {
-                    this.packageKey = StringUtils.strip(dirName, File.separator);
-                    this.packageKey = StringUtils.replace(this.packageKey, File.separator, ".");
-                    this.packageKey = StringUtils.substringAfterLast(this.packageKey, ".");
-                }
+            if (dirName.indexOf(File.separator) >= 0) {
+                this.packageKey = StringUtils.strip(dirName, File.separator);
+                this.packageKey = StringUtils.replace(this.packageKey, File.separator, ".");
+                this.packageKey = StringUtils.substringAfterLast(this.packageKey, ".");
             }
         }
 
@@ -0,0 +1,162 @@
+package com.godaddy.sonar.ruby.core;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOCase;
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lists the ruby input files of the analyzed module once and shares them
+ * between the sensors, along with their relative and absolute path lookups.
+ * The file system is only queried on the first request, once it's indexed.
+ * The {@link RubyFile} resources are resolved against a table of the input
+ * file paths, instead of every input file, and created once by path.
+ */
+@BatchSide
+public class RubyFileCatalog {
+    private final FileSystem fileSystem;
+    private volatile Catalog catalog = null;
+
+    /**
+     * Instantiates a new ruby file catalog
+     *
+     * @param fileSystem the project analyzed file system object
+     */
+    public RubyFileCatalog(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * @return the ruby input files, in the file system order
+     */
+    public List<InputFile> inputFiles() {
+        return catalog().inputFiles;
+    }
+
+    /**
+     * @return the ruby files, in the same order as the input files
+     */
+    public List<File> files() {
+        return catalog().files;
+    }
+
+    /**
+     * @return true if the module has no ruby file
+     */
+    public boolean isEmpty() {
+        return catalog().inputFiles.isEmpty();
+    }
+
+    /**
+     * Looks up a ruby input file by its path relative to the module base directory
+     *
+     * @param relativePath the relative path
+     * @return the input file or null if there's no such ruby file
+     */
+    public InputFile inputFile(String relativePath) {
+        return catalog().byRelativePath.get(relativePath);
+    }
+
+    /**
+     * Looks up a ruby input file by its absolute path
+     *
+     * @param absolutePath the absolute path
+     * @return the input file or null if there's no such ruby file
+     */
+    public InputFile inputFileByAbsolutePath(String absolutePath) {
+        return catalog().byAbsolutePath.get(absolutePath);
+    }
+
+    /**
+     * Gives the resource of a file, keyed as by {@link RubyFile#RubyFile(File, List)} with the ruby input files
+     *
+     * @param file the file, a ruby input file or not
+     * @return the resource, the same instance for each request of the same path
+     */
+    public RubyFile rubyFile(File file) {
+        Catalog result = catalog();
+        return result.resources.computeIfAbsent(file.getAbsolutePath(), path -> result.resolve(file));
+    }
+
+    private Catalog catalog() {
+        Catalog result = catalog;
+        if (result == null) {
+            synchronized (this) {
+                result = catalog;
+                if (result == null) {
+                    result = new Catalog(fileSystem.inputFiles(fileSystem.predicates().hasLanguage(Ruby.KEY)));
+                    catalog = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static class Catalog {
+        private final List<InputFile> inputFiles;
+        private final List<File> files;
+        private final Map<String, InputFile> byRelativePath;
+        private final Map<String, InputFile> byAbsolutePath;
+        private final Map<String, File> byNormalizedPath = new HashMap<>();
+        private final Map<String, RubyFile> resources = new ConcurrentHashMap<>();
+
+        Catalog(Iterable<InputFile> rubyFiles) {
+            ImmutableList.Builder<InputFile> inputFilesBuilder = ImmutableList.builder();
+            ImmutableList.Builder<File> filesBuilder = ImmutableList.builder();
+            ImmutableMap.Builder<String, InputFile> relativeBuilder = ImmutableMap.builder();
+            ImmutableMap.Builder<String, InputFile> absoluteBuilder = ImmutableMap.builder();
+            for (InputFile inputFile : rubyFiles) {
+                inputFilesBuilder.add(inputFile);
+                filesBuilder.add(inputFile.file());
+                relativeBuilder.put(inputFile.relativePath(), inputFile);
+                absoluteBuilder.put(inputFile.absolutePath(), inputFile);
+                byNormalizedPath.putIfAbsent(normalize(inputFile.file()), inputFile.file());
+            }
+            this.inputFiles = inputFilesBuilder.build();
+            this.files = filesBuilder.build();
+            this.byRelativePath = relativeBuilder.build();
+            this.byAbsolutePath = absoluteBuilder.build();
+        }
+
+        /**
+         * Resolves a file like {@link org.sonar.api.scan.filesystem.PathResolver#relativePath(java.util.Collection, File)}
+         * does against the input files: the file or its closest ancestor among them, and the path below it
+         */
+        RubyFile resolve(File file) {
+            Deque<String> stack = new ArrayDeque<>();
+            File cursor = new File(normalizedPath(file));
+            while (cursor != null) {
+                File dir = byNormalizedPath.get(normalize(cursor));
+                if (dir != null) {
+                    return new RubyFile(file, dir, Joiner.on("/").join(stack));
+                }
+                stack.addFirst(cursor.getName());
+                cursor = cursor.getParentFile();
+            }
+            return new RubyFile(file, null, null);
+        }
+
+        private static String normalize(File file) {
+            String path = normalizedPath(file);
+            return IOCase.SYSTEM.isCaseSensitive() ? path : path.toLowerCase(Locale.ENGLISH);
+        }
+
+        private static String normalizedPath(File file) {
+            String path = FilenameUtils.normalize(file.getAbsolutePath());
+            return path != null ? path : file.getAbsolutePath();
+        }
+    }
+}
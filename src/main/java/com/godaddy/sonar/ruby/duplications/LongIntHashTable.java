@@ -0,0 +1,92 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table of primitive long keys to non negative int values, with linear probing.
+ * Neither keys nor values are boxed: an entry takes twelve bytes of its two arrays, which are kept at most
+ * half full.
+ */
+class LongIntHashTable {
+    static final int NONE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize the number of entries expected, the table grows past it
+     */
+    LongIntHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NONE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Maps a key to a value unless the key is already mapped
+     *
+     * @param key   the key
+     * @param value the value, not negative
+     * @return the value already mapped to the key, or -1 if the value was added
+     */
+    int putIfAbsent(long key, int value) {
+        int slot = slot(key);
+        while (values[slot] != NONE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return NONE;
+    }
+
+    /**
+     * @param key the key
+     * @return the value mapped to the key, or -1 if the key is not mapped
+     */
+    int get(long key) {
+        for (int slot = slot(key); values[slot] != NONE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return NONE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        // the high bits of the multiplied key are the best mixed
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, NONE);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != NONE) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
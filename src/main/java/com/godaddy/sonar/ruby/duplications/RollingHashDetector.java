@@ -0,0 +1,225 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Detects the duplicated blocks of ruby files with Rabin-Karp rolling hashes over windows of their tokens,
+ * the JRuby lexer token names also used by {@link RubyCPDMapping}.
+ *
+ * The tokens are kept as two ints each, the code of the token name and its line, in arrays shared by all the
+ * files. The hash of each window of the minimum number of tokens is rolled from the previous window in constant
+ * time, and mapped to the first window with this hash in a {@link LongIntHashTable}. A window whose hash is already
+ * mapped and whose tokens are the same as the first window is a duplicated block, extended for as long as the
+ * following tokens of both copies are the same. The detection is linear in the number of tokens, and takes a
+ * fraction of the memory of a list of CPD token entries.
+ *
+ * A detector is not thread safe, and detects the duplications of the files added to it once.
+ */
+public class RollingHashDetector {
+    private static final long BASE = 1000003L;
+
+    private final int minimumTokens;
+    private final FileFingerprintStore.Section fingerprints;
+    private final Map<String, Integer> imageCodes = new HashMap<String, Integer>();
+
+    // by token, the files are separated by a token of their own which never matches another token
+    private int[] codes = new int[1024];
+    private int[] lines = new int[1024];
+    private int tokens = 0;
+
+    // by file, its first token
+    private int[] fileStarts = new int[16];
+    private int files = 0;
+    private boolean fileOpen = false;
+
+    /**
+     * Receives the duplicated blocks, group by group
+     */
+    public interface BlockConsumer {
+        /**
+         * Adds a block to the current group
+         *
+         * @param fileIndex the index of the file of the block, in the order the files were added
+         * @param startLine the first line of the block
+         * @param lines     the number of lines of the block
+         */
+        void block(int fileIndex, int startLine, int lines);
+
+        /**
+         * Ends the current group, the next blocks belong to a new group
+         */
+        void endGroup();
+    }
+
+    /**
+     * @param minimumTokens    the minimum number of tokens of a duplicated block
+     * @param fingerprintStore the store of the tokens of the unchanged files, shared with {@link RubyCPDMapping}
+     */
+    public RollingHashDetector(int minimumTokens, FileFingerprintStore fingerprintStore) {
+        this(minimumTokens, fingerprintStore.section(RubyLexerTokens.FINGERPRINT_SECTION, RubyLexerTokens.FINGERPRINT_CONTEXT));
+    }
+
+    RollingHashDetector(int minimumTokens, FileFingerprintStore.Section fingerprints) {
+        this.minimumTokens = minimumTokens;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Tokenizes a file and adds its tokens
+     *
+     * @param file the ruby file
+     * @throws IOException when the file could not be read
+     */
+    public void addFile(File file) throws IOException {
+        startFile();
+        RubyLexerTokens.tokenize(file, fingerprints, this::addToken);
+    }
+
+    void startFile() {
+        closeFile();
+        if (files == fileStarts.length) {
+            fileStarts = Arrays.copyOf(fileStarts, files * 2);
+        }
+        fileStarts[files++] = tokens;
+        fileOpen = true;
+    }
+
+    void addToken(String image, int line) {
+        Integer code = imageCodes.get(image);
+        if (code == null) {
+            code = imageCodes.size() + 1;
+            imageCodes.put(image, code);
+        }
+        append(code, line);
+    }
+
+    private void closeFile() {
+        if (fileOpen) {
+            append(-files, 0);
+            fileOpen = false;
+        }
+    }
+
+    private void append(int code, int line) {
+        if (tokens == codes.length) {
+            codes = Arrays.copyOf(codes, tokens * 2);
+            lines = Arrays.copyOf(lines, tokens * 2);
+        }
+        codes[tokens] = code;
+        lines[tokens] = line;
+        tokens++;
+    }
+
+    /**
+     * Detects the duplicated blocks of the files added, a group is a first block and all of its copies
+     *
+     * @param consumer the consumer of the blocks
+     */
+    public void detect(BlockConsumer consumer) {
+        closeFile();
+        LongIntHashTable firstWindows = new LongIntHashTable(tokens);
+        long highPower = 1;
+        for (int i = 1; i < minimumTokens; i++) {
+            highPower *= BASE;
+        }
+
+        // by match, the first token of the first block, of its copy and their number of tokens
+        int[] matchOrigins = new int[16];
+        int[] matchStarts = new int[16];
+        int[] matchLengths = new int[16];
+        int matches = 0;
+
+        for (int file = 0; file < files; file++) {
+            int end = file + 1 < files ? fileStarts[file + 1] - 1 : tokens - 1;
+            int start = fileStarts[file];
+            long hash = start + minimumTokens <= end ? hash(start) : 0;
+            while (start + minimumTokens <= end) {
+                int origin = firstWindows.putIfAbsent(hash, start);
+                if (origin != LongIntHashTable.NONE && origin + minimumTokens <= start && sameTokens(origin, start)) {
+                    // the separators of the files never match, the copies are extended up to the end of their files
+                    int length = minimumTokens;
+                    while (origin + length < start && codes[origin + length] == codes[start + length]) {
+                        length++;
+                    }
+                    if (matches == matchOrigins.length) {
+                        matchOrigins = Arrays.copyOf(matchOrigins, matches * 2);
+                        matchStarts = Arrays.copyOf(matchStarts, matches * 2);
+                        matchLengths = Arrays.copyOf(matchLengths, matches * 2);
+                    }
+                    matchOrigins[matches] = origin;
+                    matchStarts[matches] = start;
+                    matchLengths[matches] = length;
+                    matches++;
+
+                    // the windows of the copy are not hashed, the same windows of the first block are
+                    start += length;
+                    if (start + minimumTokens <= end) {
+                        hash = hash(start);
+                    }
+                } else {
+                    if (start + minimumTokens < end) {
+                        hash = (hash - codes[start] * highPower) * BASE + codes[start + minimumTokens];
+                    }
+                    start++;
+                }
+            }
+        }
+
+        reportGroups(consumer, matchOrigins, matchStarts, matchLengths, matches);
+    }
+
+    private void reportGroups(BlockConsumer consumer, int[] origins, int[] starts, int[] lengths, int matches) {
+        // the copies of the same first block, with the same number of tokens, are reported as one group
+        Integer[] order = new Integer[matches];
+        for (int i = 0; i < matches; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> origins[i]).thenComparingInt(i -> lengths[i]));
+        for (int i = 0; i < matches; i++) {
+            int match = order[i];
+            if (i == 0 || origins[order[i - 1]] != origins[match] || lengths[order[i - 1]] != lengths[match]) {
+                if (i > 0) {
+                    consumer.endGroup();
+                }
+                reportBlock(consumer, origins[match], lengths[match]);
+            }
+            reportBlock(consumer, starts[match], lengths[match]);
+        }
+        if (matches > 0) {
+            consumer.endGroup();
+        }
+    }
+
+    private void reportBlock(BlockConsumer consumer, int start, int length) {
+        int file = Arrays.binarySearch(fileStarts, 0, files, start);
+        if (file < 0) {
+            file = -file - 2;
+        }
+        int startLine = lines[start];
+        consumer.block(file, startLine, lines[start + length - 1] - startLine + 1);
+    }
+
+    private long hash(int start) {
+        long hash = 0;
+        for (int i = start; i < start + minimumTokens; i++) {
+            hash = hash * BASE + codes[i];
+        }
+        return hash;
+    }
+
+    private boolean sameTokens(int first, int second) {
+        for (int i = 0; i < minimumTokens; i++) {
+            if (codes[first + i] != codes[second + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,37 +1,37 @@
 package com.godaddy.sonar.ruby.duplications;
 
+import com.godaddy.sonar.ruby.RubyPlugin;
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.Ruby;
 import net.sourceforge.pmd.cpd.SourceCode;
 import net.sourceforge.pmd.cpd.TokenEntry;
 import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.cpd.Tokens;
-import org.jruby.CompatVersion;
-import org.jruby.lexer.yacc.LexerSource;
-import org.jruby.lexer.yacc.RubyYaccLexer;
-import org.jruby.lexer.yacc.RubyYaccLexer.LexState;
-import org.jruby.parser.DefaultRubyParser;
-import org.jruby.parser.ParserConfiguration;
-import org.jruby.parser.ParserSupport;
-import org.jruby.parser.RubyParserResult;
 import org.sonar.api.batch.AbstractCpdMapping;
 import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Language;
-import org.sonar.api.resources.Project;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 
+/**
+ * Maps the ruby language to a CPD tokenizer based on the JRuby lexer, the duplications are then
+ * detected by the SonarQube CPD engine on the token names, regardless of identifiers and literals.
+ */
 public class RubyCPDMapping extends AbstractCpdMapping {
+    private static final String DUPLICATIONS_CPD = "cpd";
+
     Ruby ruby;
+    Settings settings;
     FileSystem fileSystem;
+    FileFingerprintStore fingerprintStore;
 
-    public RubyCPDMapping(Ruby ruby, Project project, FileSystem fileSystem) {
+    public RubyCPDMapping(Ruby ruby, Settings settings, FileSystem fileSystem, FileFingerprintStore fingerprintStore) {
         this.ruby = ruby;
+        this.settings = settings;
         this.fileSystem = fileSystem;
+        this.fingerprintStore = fingerprintStore;
     }
 
     @Override
@@ -41,49 +41,30 @@ public class RubyCPDMapping extends AbstractCpdMapping {
 
     @Override
     public Tokenizer getTokenizer() {
-        return new RubyCPDTokenizer();
+        boolean enabled = DUPLICATIONS_CPD.equalsIgnoreCase(settings.getString(RubyPlugin.DUPLICATIONS_ENGINE_PROPERTY));
+        return new RubyCPDTokenizer(enabled, fingerprintStore.section(RubyLexerTokens.FINGERPRINT_SECTION, RubyLexerTokens.FINGERPRINT_CONTEXT));
     }
 
     class RubyCPDTokenizer implements Tokenizer {
+        private final boolean enabled;
+        private final FileFingerprintStore.Section fingerprints;
+
+        RubyCPDTokenizer(boolean enabled, FileFingerprintStore.Section fingerprints) {
+            this.enabled = enabled;
+            this.fingerprints = fingerprints;
+        }
 
         @Override
         public void tokenize(SourceCode source, Tokens cpdTokens) throws IOException {
-            String fileName = source.getFileName();
-            List<String> l = new ArrayList<String>();
-            ParserConfiguration c = new ParserConfiguration(org.jruby.Ruby.getGlobalRuntime(), 0, false, CompatVersion.BOTH);
-            LexerSource s = LexerSource.getSource(source.getFileName(), new FileInputStream(new File(source.getFileName())), l, c);
-            ParserSupport ps = new ParserSupport();
-            ps.setConfiguration(c);
-            ps.pushLocalScope();
-            ps.setResult(new RubyParserResult());
-            RubyYaccLexer lex = new RubyYaccLexer();
-            lex.reset();
-            lex.setSource(s);
-            lex.setParserSupport(ps);
-            lex.setEncoding(RubyYaccLexer.UTF8_ENCODING);
-            lex.setState(LexState.EXPR_BEG);
-            while (lex.nextToken() > 0) {
-                cpdTokens.add(new TokenEntry(DefaultRubyParser.yyName(lex.token()), fileName, lex.getPosition().getStartLine()));
+            // the duplications are reported by the metricfu duplication sensor instead
+            if (!enabled) {
+                return;
             }
-        }
-    }
-
-    public static void main(String[] args) {
-        RubyCPDMapping m = new RubyCPDMapping(new Ruby(), null, null);
-        Tokens t = new Tokens();
-        Tokenizer toker = m.getTokenizer();
 
-        SourceCode s = new SourceCode(new SourceCode.FileCodeLoader(new File("/home/gallen/work/ruby-sonar-plugin-sync/src/test/resources/test-data/hello_world.rb"), "utf-8"));
-        try {
-            toker.tokenize(s, t);
-            Iterator<TokenEntry> i = t.iterator();
-            while (i.hasNext()) {
-                TokenEntry e = i.next();
-                System.out.println(e.getBeginLine() + ": " + e.getValue() + ", " + e.getTokenSrcID());
-            }
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            String fileName = source.getFileName();
+            RubyLexerTokens.tokenize(new File(fileName), fingerprints,
+                    (image, line) -> cpdTokens.add(new TokenEntry(image, fileName, line)));
+            cpdTokens.add(TokenEntry.getEOF());
         }
     }
 }
@@ -0,0 +1,270 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import com.godaddy.sonar.ruby.parsers.RubyLineScanner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Streams the CPD tokens of a ruby source file to a consumer, with their text ranges, without building
+ * a token list. Identifiers (variables, constants, method names) and literals (numbers, strings, symbols,
+ * regular expressions) are normalized, so that copies are found whatever their names and values, while
+ * keywords and operators are kept. Comments, `=begin`/`=end` blocks, heredoc bodies and the `__END__`
+ * data section produce no token.
+ *
+ * The lines are read and the constructs spanning them, literals, block comments and heredocs, are followed
+ * by {@link RubyLineScanner}, as for the line metrics. The source is always decoded, since the ranges are
+ * given in chars of their lines.
+ *
+ * A scanner reuses its buffers from file to file, so it is not thread safe: each worker has to use its
+ * own instance.
+ */
+public class RubyCpdTokenScanner extends RubyLineScanner {
+    public static final String IDENTIFIER = "$id";
+    public static final String NUMBER = "$num";
+    public static final String STRING = "$str";
+    public static final String SYMBOL = "$sym";
+    public static final String REGEXP = "$re";
+
+    private static final String[] OPERATORS = {
+            "**=", "<=>", "===", "...", "<<=", ">>=", "&&=", "||=",
+            "==", "!=", ">=", "<=", "&&", "||", "<<", ">>", "**", "=~", "!~", "+=", "-=", "*=", "/=", "%=",
+            "|=", "&=", "^=", "::", "..", "->", "=>", "&."
+    };
+    private static final String[] CHARS = new String[128];
+
+    // open addressing table of the keywords, looked up on the line chars without creating strings
+    private static final int KEYWORD_TABLE_SIZE = 128;
+    private static final String[] KEYWORDS = new String[KEYWORD_TABLE_SIZE];
+
+    static {
+        for (char c = 0; c < CHARS.length; c++) {
+            CHARS[c] = String.valueOf(c);
+        }
+        for (String keyword : Arrays.asList("alias", "and", "begin", "BEGIN", "break", "case", "class", "def",
+                "defined?", "do", "else", "elsif", "end", "END", "ensure", "false", "for", "if", "in", "module", "next",
+                "nil", "not", "or", "redo", "rescue", "retry", "return", "self", "super", "then", "true", "undef", "unless",
+                "until", "when", "while", "yield", "__FILE__", "__LINE__", "__method__", "__ENCODING__")) {
+            int slot = keyword.hashCode() & (KEYWORD_TABLE_SIZE - 1);
+            while (KEYWORDS[slot] != null) {
+                slot = (slot + 1) & (KEYWORD_TABLE_SIZE - 1);
+            }
+            KEYWORDS[slot] = keyword;
+        }
+    }
+
+    /**
+     * Receives the tokens of a source, in their order
+     */
+    public interface TokenConsumer {
+        /**
+         * @param startLine       the line of the first char of the token, from 1
+         * @param startLineOffset the offset of the first char in its line
+         * @param endLine         the line of the last char of the token
+         * @param endLineOffset   the offset following the last char in its line
+         * @param image           the normalized image of the token
+         */
+        void token(int startLine, int startLineOffset, int endLine, int endLineOffset, String image);
+    }
+
+    private TokenConsumer consumer;
+
+    // the start of the literal spanning the current position
+    private String literalImage;
+    private int literalStartLine;
+    private int literalStartOffset;
+
+    /**
+     * Scans a source file
+     *
+     * @param file     the source file
+     * @param charset  the encoding of the file
+     * @param consumer the consumer of the tokens
+     * @throws IOException when the file could not be read
+     */
+    public void scan(File file, Charset charset, TokenConsumer consumer) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), charset)) {
+            scan(reader, consumer);
+        }
+    }
+
+    /**
+     * Scans a source, the reader is not closed
+     *
+     * @param reader   the reader of the source
+     * @param consumer the consumer of the tokens
+     * @throws IOException when the source could not be read
+     */
+    public void scan(Reader reader, TokenConsumer consumer) throws IOException {
+        this.consumer = consumer;
+        try {
+            read(reader);
+        } finally {
+            this.consumer = null;
+        }
+    }
+
+    @Override
+    protected void scanLine(int kind) {
+        // comments, heredoc bodies and data produce no token
+        if (kind != CODE_LINE) {
+            return;
+        }
+        int i = 0;
+        while (i < lineLength) {
+            if (inLiteral()) {
+                i = scanLiteral(i);
+                if (!inLiteral()) {
+                    consumer.token(literalStartLine, literalStartOffset, lineNumber, i, literalImage);
+                }
+                continue;
+            }
+            char c = line[i];
+            if (c == ' ' || c == '\t' || c == '\f' || c == '\u000B' || c == '\\' && i == lineLength - 1) {
+                i++;
+            } else if (c == '#') {
+                return;
+            } else if (isIdentifierStart(c)) {
+                i = scanIdentifier(i);
+            } else if (c >= '0' && c <= '9') {
+                i = scanNumber(i);
+            } else if (c == '@' || c == '$') {
+                i = scanVariable(i);
+            } else if (c == ':' && i + 1 < lineLength && line[i + 1] != ':' && (i == 0 || !isIdentifierChar(line[i - 1]))) {
+                i = scanSymbol(i);
+            } else {
+                int next = scanLiteralStart(i);
+                if (next < 0) {
+                    i = scanOperator(i);
+                } else if (inLiteral()) {
+                    i = startLiteral(i, next);
+                } else {
+                    // a char literal or a heredoc start, the heredoc body follows the line
+                    emit(i, next, STRING);
+                    i = next;
+                }
+            }
+        }
+    }
+
+    private int scanIdentifier(int start) {
+        int i = start + 1;
+        while (i < lineLength && isIdentifierChar(line[i])) {
+            i++;
+        }
+        // predicate and bang method names, but not the `!=` and `?:` operators
+        if (i < lineLength && (line[i] == '?' || line[i] == '!')
+                && (i + 1 == lineLength || line[i + 1] != '=' && line[i + 1] != ':')) {
+            i++;
+        }
+        int keyword = findKeyword(start, i);
+        emit(start, i, keyword >= 0 ? KEYWORDS[keyword] : IDENTIFIER);
+        return i;
+    }
+
+    private int findKeyword(int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line[i];
+        }
+        for (int slot = hash & (KEYWORD_TABLE_SIZE - 1); KEYWORDS[slot] != null; slot = (slot + 1) & (KEYWORD_TABLE_SIZE - 1)) {
+            if (KEYWORDS[slot].length() == end - start && startsWith(start, KEYWORDS[slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int scanNumber(int start) {
+        int i = start + 1;
+        while (i < lineLength) {
+            char c = line[i];
+            if ((c == 'e' || c == 'E') && i + 2 < lineLength && (line[i + 1] == '+' || line[i + 1] == '-')
+                    && Character.isDigit(line[i + 2]) && !isHexadecimal(start)) {
+                i += 2;
+            } else if (c == '.' && i + 1 < lineLength && Character.isDigit(line[i + 1])) {
+                i++;
+            } else if (isIdentifierChar(c) && c < 0x80) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        emit(start, i, NUMBER);
+        return i;
+    }
+
+    private boolean isHexadecimal(int start) {
+        return start + 1 < lineLength && line[start] == '0' && (line[start + 1] == 'x' || line[start + 1] == 'X');
+    }
+
+    private int scanVariable(int start) {
+        int i = start + 1;
+        if (line[start] == '@' && i < lineLength && line[i] == '@') {
+            i++;
+        }
+        if (i < lineLength && isIdentifierChar(line[i])) {
+            while (i < lineLength && isIdentifierChar(line[i])) {
+                i++;
+            }
+        } else if (line[start] == '$' && i < lineLength && line[i] != ' ' && line[i] != '\t') {
+            // special globals such as $! or $0
+            i++;
+        } else {
+            return scanOperator(start);
+        }
+        emit(start, i, IDENTIFIER);
+        return i;
+    }
+
+    private int scanSymbol(int start) {
+        int i = start + 1;
+        char c = line[i];
+        if (c == '"' || c == '\'') {
+            enterLiteral(SYMBOL_LITERAL, c, c, c == '"');
+            return startLiteral(start, i + 1);
+        }
+        if (isIdentifierStart(c) || c == '@' || c == '$') {
+            while (i < lineLength && (isIdentifierChar(line[i]) || line[i] == '@' || line[i] == '$')) {
+                i++;
+            }
+            if (i < lineLength && (line[i] == '?' || line[i] == '!' || line[i] == '=')
+                    && (i + 1 == lineLength || line[i + 1] != '=' && line[i + 1] != '>' && line[i + 1] != '~')) {
+                i++;
+            }
+            emit(start, i, SYMBOL);
+            return i;
+        }
+        return scanOperator(start);
+    }
+
+    private int startLiteral(int start, int next) {
+        int kind = literalKind();
+        literalImage = kind == SYMBOL_LITERAL ? SYMBOL : kind == REGEXP_LITERAL ? REGEXP : STRING;
+        literalStartLine = lineNumber;
+        literalStartOffset = start;
+        return next;
+    }
+
+    private int scanOperator(int start) {
+        for (String operator : OPERATORS) {
+            if (startsWith(start, operator)) {
+                emit(start, start + operator.length(), operator);
+                return start + operator.length();
+            }
+        }
+        char c = line[start];
+        String image = c < CHARS.length ? CHARS[c] : String.valueOf(c);
+        emit(start, start + 1, image);
+        return start + 1;
+    }
+
+    private void emit(int start, int end, String image) {
+        consumer.token(lineNumber, start, lineNumber, end, image);
+    }
+}
@@ -0,0 +1,144 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
+import org.jruby.CompatVersion;
+import org.jruby.lexer.yacc.LexerSource;
+import org.jruby.lexer.yacc.RubyYaccLexer;
+import org.jruby.lexer.yacc.RubyYaccLexer.LexState;
+import org.jruby.parser.DefaultRubyParser;
+import org.jruby.parser.ParserConfiguration;
+import org.jruby.parser.ParserSupport;
+import org.jruby.parser.RubyParserResult;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizes ruby files with the JRuby lexer into token names, regardless of identifiers and literals, and their lines.
+ * The tokens of the files unchanged since the previous analysis are read from the fingerprint store, stored as the
+ * token names and lines, so that every detector working on these tokens shares them.
+ */
+final class RubyLexerTokens {
+    static final String FINGERPRINT_SECTION = "cpd-tokens";
+    static final String FINGERPRINT_CONTEXT = "jruby-lexer";
+
+    // the lexers are expensive to set up, each thread reuses its own, reset between files
+    private static final ThreadLocal<ReusableLexer> LEXERS = ThreadLocal.withInitial(ReusableLexer::new);
+
+    /**
+     * Receives the tokens of a file, in their order
+     */
+    interface TokenConsumer {
+        void token(String image, int line);
+    }
+
+    private RubyLexerTokens() {
+    }
+
+    /**
+     * Tokenizes a file, or reads its stored tokens when it is unchanged
+     *
+     * @param file         the ruby file
+     * @param fingerprints the section of the fingerprint store keeping the tokens
+     * @param consumer     the consumer of the tokens
+     * @throws IOException when the file could not be read
+     */
+    static void tokenize(File file, FileFingerprintStore.Section fingerprints, TokenConsumer consumer) throws IOException {
+        byte[] stored = fingerprints.get(file);
+        if (stored != null && isValid(stored)) {
+            ByteBuffer buffer = ByteBuffer.wrap(stored);
+            while (buffer.hasRemaining()) {
+                byte[] image = new byte[buffer.getInt()];
+                buffer.get(image);
+                consumer.token(new String(image, StandardCharsets.UTF_8), buffer.getInt());
+            }
+            return;
+        }
+
+        // the file is fingerprinted from the bytes lexed, rather than read again
+        FileFingerprintStore.Fingerprint fingerprint = new FileFingerprintStore.Fingerprint(file);
+        ByteArrayOutputStream tokens = new ByteArrayOutputStream();
+        DataOutputStream tokensOutput = new DataOutputStream(tokens);
+        try (InputStream input = new BufferedInputStream(new DigestInputStream(new FileInputStream(file), fingerprint.digest()))) {
+            RubyYaccLexer lexer = LEXERS.get().reset(file.getPath(), input);
+            while (lexer.nextToken() > 0) {
+                String image = DefaultRubyParser.yyName(lexer.token());
+
+                // the lexer positions start at line 0
+                int line = lexer.getPosition().getStartLine() + 1;
+                consumer.token(image, line);
+                byte[] imageBytes = image.getBytes(StandardCharsets.UTF_8);
+                tokensOutput.writeInt(imageBytes.length);
+                tokensOutput.write(imageBytes);
+                tokensOutput.writeInt(line);
+            }
+
+            // the lexer stops at __END__, the rest of the file is digested too
+            byte[] rest = new byte[8192];
+            while (input.read(rest) != -1) {
+                // only digested
+            }
+        }
+        tokensOutput.flush();
+        fingerprints.put(file, fingerprint, tokens.toByteArray());
+    }
+
+    /**
+     * Checks the records of stored tokens before any of them is consumed, corrupted tokens are tokenized again
+     */
+    private static boolean isValid(byte[] stored) {
+        ByteBuffer buffer = ByteBuffer.wrap(stored);
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < 4) {
+                return false;
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - 4) {
+                return false;
+            }
+            buffer.position(buffer.position() + length + 4);
+        }
+        return true;
+    }
+
+    /**
+     * A JRuby lexer along with its configuration, created once per thread and reset for each file
+     */
+    private static final class ReusableLexer {
+        private final ParserConfiguration configuration =
+                new ParserConfiguration(org.jruby.Ruby.getGlobalRuntime(), 0, false, CompatVersion.BOTH);
+        private final List<String> scriptLines = new ArrayList<String>();
+        private final RubyYaccLexer lexer = new RubyYaccLexer();
+
+        /**
+         * Resets the lexer to read a new file, the parser state of the previous file is dropped
+         *
+         * @param fileName the name of the file
+         * @param input    the content of the file, closed by the caller
+         * @return the lexer
+         */
+        RubyYaccLexer reset(String fileName, InputStream input) {
+            scriptLines.clear();
+            ParserSupport parserSupport = new ParserSupport();
+            parserSupport.setConfiguration(configuration);
+            parserSupport.pushLocalScope();
+            parserSupport.setResult(new RubyParserResult());
+            lexer.reset();
+            lexer.setSource(LexerSource.getSource(fileName, input, scriptLines, configuration));
+            lexer.setParserSupport(parserSupport);
+            lexer.setEncoding(RubyYaccLexer.UTF8_ENCODING);
+            lexer.setState(LexState.EXPR_BEG);
+            return lexer;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The duplication groups reported by flay, kept as primitive records: a block is the id of its file,
+ * its start line and its number of lines, and a group is a range of consecutive blocks.
+ * The blocks of each file are chained in their report order, so that the duplications data of
+ * a file, every group of each of its blocks, is written directly as XML without copying the groups.
+ */
+class DuplicationGroups {
+    private static final int NONE = -1;
+
+    private final List<String> fileKeys = new ArrayList<String>();
+    private final Map<String, Integer> fileIds = new HashMap<String, Integer>();
+
+    // by block id
+    private int[] blockFiles = new int[64];
+    private int[] blockStarts = new int[64];
+    private int[] blockLengths = new int[64];
+    private int[] blockGroups = new int[64];
+    private int[] nextFileBlocks = new int[64];
+    private int blocks = 0;
+
+    // by group id, the first block of the group, followed by the end of the last group
+    private int[] groupStarts = new int[16];
+    private int groups = 0;
+
+    // by file id
+    private int[] firstFileBlocks = new int[16];
+    private int[] lastFileBlocks = new int[16];
+    private int[] fileBlocks = new int[16];
+    private int[] fileLines = new int[16];
+
+    /**
+     * Gives the id of a file, registering it on its first request
+     *
+     * @param fileKey the resource key of the file
+     * @return the file id
+     */
+    int fileId(String fileKey) {
+        Integer fileId = fileIds.get(fileKey);
+        if (fileId == null) {
+            fileId = fileKeys.size();
+            if (fileId == firstFileBlocks.length) {
+                firstFileBlocks = Arrays.copyOf(firstFileBlocks, fileId * 2);
+                lastFileBlocks = Arrays.copyOf(lastFileBlocks, fileId * 2);
+                fileBlocks = Arrays.copyOf(fileBlocks, fileId * 2);
+                fileLines = Arrays.copyOf(fileLines, fileId * 2);
+            }
+            firstFileBlocks[fileId] = NONE;
+            lastFileBlocks[fileId] = NONE;
+            fileKeys.add(fileKey);
+            fileIds.put(fileKey, fileId);
+        }
+        return fileId;
+    }
+
+    /**
+     * Looks up the id of a file
+     *
+     * @param fileKey the resource key of the file
+     * @return the file id or -1 if the file has no duplicated block
+     */
+    int findFileId(String fileKey) {
+        Integer fileId = fileIds.get(fileKey);
+        return fileId != null && firstFileBlocks[fileId] != NONE ? fileId : NONE;
+    }
+
+    /**
+     * Adds a block to the current group
+     *
+     * @param fileId the id of the file of the block
+     * @param start  the first line of the block
+     * @param length the number of lines of the block
+     */
+    void addBlock(int fileId, int start, int length) {
+        if (blocks == blockFiles.length) {
+            int capacity = blocks * 2;
+            blockFiles = Arrays.copyOf(blockFiles, capacity);
+            blockStarts = Arrays.copyOf(blockStarts, capacity);
+            blockLengths = Arrays.copyOf(blockLengths, capacity);
+            blockGroups = Arrays.copyOf(blockGroups, capacity);
+            nextFileBlocks = Arrays.copyOf(nextFileBlocks, capacity);
+        }
+        blockFiles[blocks] = fileId;
+        blockStarts[blocks] = start;
+        blockLengths[blocks] = length;
+        blockGroups[blocks] = groups;
+        nextFileBlocks[blocks] = NONE;
+
+        // chain the block to the previous block of its file
+        if (lastFileBlocks[fileId] == NONE) {
+            firstFileBlocks[fileId] = blocks;
+        } else {
+            nextFileBlocks[lastFileBlocks[fileId]] = blocks;
+        }
+        lastFileBlocks[fileId] = blocks;
+        fileBlocks[fileId]++;
+        fileLines[fileId] += length;
+        blocks++;
+    }
+
+    /**
+     * Ends the current group, the next blocks are added to a new group
+     */
+    void endGroup() {
+        if (groups + 2 > groupStarts.length) {
+            groupStarts = Arrays.copyOf(groupStarts, groupStarts.length * 2);
+        }
+        groups++;
+        groupStarts[groups] = blocks;
+    }
+
+    /**
+     * @param fileId the id of the file
+     * @return the number of duplicated blocks of the file
+     */
+    int blocks(int fileId) {
+        return fileBlocks[fileId];
+    }
+
+    /**
+     * @param fileId the id of the file
+     * @return the summed number of lines of the duplicated blocks of the file
+     */
+    int lines(int fileId) {
+        return fileLines[fileId];
+    }
+
+    /**
+     * Writes the duplications data of a file, the group of each of its blocks
+     *
+     * @param fileId the id of the file
+     * @return the duplications XML
+     */
+    String toXml(int fileId) {
+        StringBuilder xml = new StringBuilder(256);
+        xml.append("<duplications>");
+        for (int block = firstFileBlocks[fileId]; block != NONE; block = nextFileBlocks[block]) {
+            int group = blockGroups[block];
+            xml.append("<g>");
+            for (int member = groupStarts[group]; member < groupStarts[group + 1]; member++) {
+                xml.append("<b r=\"");
+                appendEscaped(xml, fileKeys.get(blockFiles[member]));
+                xml.append("\" s=\"").append(blockStarts[member])
+                        .append("\" l=\"").append(blockLengths[member])
+                        .append("\"/>");
+            }
+            xml.append("</g>");
+        }
+        return xml.append("</duplications>").toString();
+    }
+
+    private static void appendEscaped(StringBuilder xml, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    xml.append("&amp;");
+                    break;
+                case '<':
+                    xml.append("&lt;");
+                    break;
+                case '>':
+                    xml.append("&gt;");
+                    break;
+                case '"':
+                    xml.append("&quot;");
+                    break;
+                default:
+                    xml.append(c);
+                    break;
+            }
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package com.godaddy.sonar.ruby.metricfu;
 
 import com.godaddy.sonar.ruby.RubyPlugin;
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.Ruby;
-import com.google.common.collect.Lists;
-import org.sonar.api.batch.fs.FilePredicate;
-import org.sonar.api.batch.fs.FileSystem;
+import com.godaddy.sonar.ruby.core.RubyFileCatalog;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
@@ -15,6 +14,8 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MetricfuComplexitySensor implements Sensor {
@@ -24,23 +25,28 @@ public class MetricfuComplexitySensor implements Sensor {
     private static final Number[] FUNCTIONS_DISTRIB_BOTTOM_LIMITS = {1, 2, 4, 6, 8, 10, 12, 20, 30};
     private static final String COMPLEXITY_SAIKURO = "saikuro";
     private static final String COMPLEXITY_CANE = "cane";
+    private static final String FINGERPRINT_SECTION = "complexity";
 
     private MetricfuYamlParser metricfuYamlParser;
     private Settings settings;
-    private FileSystem fileSystem;
+    private RubyFileCatalog rubyFileCatalog;
+    private FileFingerprintStore fingerprintStore;
 
     /**
      * Instantiates a new Metricfu complexity sensor which
      * collects and saves the project complexity data using the metricfu data
      *
      * @param settings           the user settings object
-     * @param fileSystem         the project analyzed file system object
+     * @param rubyFileCatalog    the project analyzed ruby files
      * @param metricfuYamlParser the metricfu yaml parser
+     * @param fingerprintStore   the store of the method complexities of the unchanged files
      */
-    public MetricfuComplexitySensor(Settings settings, FileSystem fileSystem, MetricfuYamlParser metricfuYamlParser) {
+    public MetricfuComplexitySensor(Settings settings, RubyFileCatalog rubyFileCatalog, MetricfuYamlParser metricfuYamlParser,
+                                    FileFingerprintStore fingerprintStore) {
         this.settings = settings;
-        this.fileSystem = fileSystem;
+        this.rubyFileCatalog = rubyFileCatalog;
         this.metricfuYamlParser = metricfuYamlParser;
+        this.fingerprintStore = fingerprintStore;
     }
 
     @Override
@@ -61,32 +67,38 @@ public class MetricfuComplexitySensor implements Sensor {
         }
         LOG.info("MetricfuComplexitySensor: using " + complexityType + " complexity.");
 
-        // get ruby files to analyze
-        FilePredicate predicate = fileSystem.predicates().hasLanguage(Ruby.KEY);
-        List<InputFile> sourceFiles = Lists.newArrayList(fileSystem.inputFiles(predicate));
+        // the method complexities of the files unchanged since the previous analysis of the same report
+        // are reused, the report sections are then only parsed if some files changed
+        FileFingerprintStore.Section fingerprints = fingerprintStore.section(FINGERPRINT_SECTION,
+                complexityType.toLowerCase() + ":" + settings.getString(RubyPlugin.METRICFU_REPORT_PATH_PROPERTY)
+                        + ":" + metricfuYamlParser.reportFingerprint());
 
         // iterate and analyze ruby files
-        for (InputFile inputFile : sourceFiles) {
+        for (InputFile inputFile : rubyFileCatalog.inputFiles()) {
             LOG.debug("Analyzing functions for classes in the file: " + inputFile.file().getName());
-            analyzeFile(inputFile, context, complexityType);
+            analyzeFile(inputFile, context, methodComplexities(inputFile, complexityType, fingerprints));
         }
+        fingerprints.save();
     }
 
     /**
-     * Analysis helper function used to analyze specific given project
-     * files and save their metrics into the SonarQube system
+     * Analysis helper function used to fetch the complexities of the
+     * methods of a file, from the store if the file is unchanged
      *
-     * @param inputFile      the file to scan and report for
-     * @param sensorContext  the project complexity sensor context
+     * @param inputFile      the file to fetch the method complexities of
      * @param complexityType the type of data to extract from the metricfu reports(saikuro or cane)
+     * @param fingerprints   the method complexities of the previous analyses
+     * @return the method complexities of the file
      */
-    private void analyzeFile(InputFile inputFile, SensorContext sensorContext, String complexityType) {
+    private int[] methodComplexities(InputFile inputFile, String complexityType, FileFingerprintStore.Section fingerprints) {
+        byte[] stored = fingerprints.get(inputFile.file());
+        if (stored != null) {
+            int[] complexities = new int[stored.length / Integer.BYTES];
+            ByteBuffer.wrap(stored).asIntBuffer().get(complexities);
+            return complexities;
+        }
 
-        // initialize complexity distribution builders and complexity measures
-        RangeDistributionBuilder fileDistribution = new RangeDistributionBuilder(FILES_DISTRIB_BOTTOM_LIMITS);
-        RangeDistributionBuilder functionDistribution = new RangeDistributionBuilder(FUNCTIONS_DISTRIB_BOTTOM_LIMITS);
-        int fileTotalComplexity = 0;
-        int numberOfMethods = 0;
+        List<Integer> methodComplexities = new ArrayList<>();
 
         // analyze and fetch cane or saikuro file complexities correspondingly
         // to the set complexity type
@@ -96,14 +108,9 @@ public class MetricfuComplexitySensor implements Sensor {
             for (CaneViolation caneViolation : metricfuYamlParser.parseCane(inputFile.relativePath())) {
                 if (caneViolation instanceof CaneComplexityViolation) {
 
-                    // cast the cane complexity violation and add
-                    // it's complexity to the sum and distribution
+                    // cast the cane complexity violation and add it's complexity
                     CaneComplexityViolation caneComplexityViolation = (CaneComplexityViolation) caneViolation;
-                    fileTotalComplexity += caneComplexityViolation.getComplexity();
-                    functionDistribution.add(caneComplexityViolation.getComplexity());
-
-                    // increment the number of methods for the total file complexity
-                    numberOfMethods++;
+                    methodComplexities.add(caneComplexityViolation.getComplexity());
                 }
             }
         } else {
@@ -111,16 +118,38 @@ public class MetricfuComplexitySensor implements Sensor {
             // iterate the saikuro class and method complexities
             for (SaikuroClassComplexity saikuroClassComplexity : metricfuYamlParser.parseSaikuro(inputFile.relativePath())) {
                 for (SaikuroMethodComplexity saikuroMethodComplexity : saikuroClassComplexity.getMethods()) {
-
-                    // add the saikuro method complexity to the distribution function and sum
-                    fileTotalComplexity += saikuroMethodComplexity.getComplexity();
-                    functionDistribution.add(saikuroMethodComplexity.getComplexity());
-
-                    // increment the number of methods for the total file complexity
-                    numberOfMethods++;
+                    methodComplexities.add(saikuroMethodComplexity.getComplexity());
                 }
             }
         }
+        int[] complexities = methodComplexities.stream().mapToInt(Integer::intValue).toArray();
+        ByteBuffer buffer = ByteBuffer.allocate(complexities.length * Integer.BYTES);
+        buffer.asIntBuffer().put(complexities);
+        fingerprints.put(inputFile.file(), buffer.array());
+        return complexities;
+    }
+
+    /**
+     * Analysis helper function used to analyze specific given project
+     * files and save their metrics into the SonarQube system
+     *
+     * @param inputFile     the file to scan and report for
+     * @param sensorContext the project complexity sensor context
+     * @param complexities  the complexities of the methods of the file
+     */
+    private void analyzeFile(InputFile inputFile, SensorContext sensorContext, int[] complexities) {
+
+        // initialize complexity distribution builders and complexity measures
+        RangeDistributionBuilder fileDistribution = new RangeDistributionBuilder(FILES_DISTRIB_BOTTOM_LIMITS);
+        RangeDistributionBuilder functionDistribution = new RangeDistributionBuilder(FUNCTIONS_DISTRIB_BOTTOM_LIMITS);
+        int fileTotalComplexity = 0;
+        int numberOfMethods = complexities.length;
+
+        // add each method complexity to the sum and distribution
+        for (int complexity : complexities) {
+            fileTotalComplexity += complexity;
+            functionDistribution.add(complexity);
+        }
 
         // add the summed file complexity to file distribution metrics
         LOG.debug("SETTING COMPLEXITY METRICS, fileComplexity = " + fileTotalComplexity);
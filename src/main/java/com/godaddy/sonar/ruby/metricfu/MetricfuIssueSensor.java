@@ -2,27 +2,33 @@ package com.godaddy.sonar.ruby.metricfu;
 
 import com.godaddy.sonar.ruby.RubyPlugin;
 import com.godaddy.sonar.ruby.core.Ruby;
+import com.godaddy.sonar.ruby.core.RubyFileCatalog;
 import com.godaddy.sonar.ruby.metricfu.RoodiProblem.RoodiCheck;
-import com.google.common.collect.Lists;
-import org.sonar.api.batch.fs.FileSystem;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.batch.sensor.issue.NewIssue;
 import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.config.Settings;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MetricfuIssueSensor implements Sensor {
     private static final Logger LOG = Loggers.get(MetricfuIssueSensor.class);
 
     private MetricfuYamlParser metricfuYamlParser;
-    private FileSystem fileSystem;
+    private RubyFileCatalog rubyFileCatalog;
+    private Settings settings;
 
 
     /**
@@ -30,11 +36,13 @@ public class MetricfuIssueSensor implements Sensor {
      * collects and saves the project issues data such as reek,
      * roodi and cane issues from the metricfu data collected
      *
-     * @param fileSystem         the project analyzed file system object
+     * @param settings           the user settings object
+     * @param rubyFileCatalog    the project analyzed ruby files
      * @param metricfuYamlParser the metricfu yaml parser
      */
-    public MetricfuIssueSensor(FileSystem fileSystem, MetricfuYamlParser metricfuYamlParser) {
-        this.fileSystem = fileSystem;
+    public MetricfuIssueSensor(Settings settings, RubyFileCatalog rubyFileCatalog, MetricfuYamlParser metricfuYamlParser) {
+        this.settings = settings;
+        this.rubyFileCatalog = rubyFileCatalog;
         this.metricfuYamlParser = metricfuYamlParser;
     }
 
@@ -45,37 +53,78 @@ public class MetricfuIssueSensor implements Sensor {
 
     @Override
     public void execute(SensorContext context) {
-        for (InputFile file : Lists.newArrayList(fileSystem.inputFiles(fileSystem.predicates().hasLanguage(Ruby.KEY)))) {
-            LOG.debug("analyzing issues in the file: " + file.absolutePath());
-            try {
-                analyzeFile(file, context);
-            } catch (IOException e) {
-                LOG.error("Can not analyze the file " + file.absolutePath() + " for issues");
+        List<InputFile> files = rubyFileCatalog.inputFiles();
+        int threads = Math.min(settings.getInt(RubyPlugin.METRICFU_THREADS_PROPERTY), files.size());
+
+        // analyze the files sequentially unless a worker pool was requested
+        if (threads <= 1) {
+            for (InputFile file : files) {
+                LOG.debug("analyzing issues in the file: " + file.absolutePath());
+                saveIssues(file, collectIssues(file), context);
             }
+            return;
+        }
+
+        // collect the issues of the files concurrently, the issues
+        // are saved by this thread only, in the input files order
+        LOG.info("MetricfuIssueSensor: analyzing issues using " + threads + " threads.");
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("metricfu-issues-%d").setDaemon(true).build());
+        try {
+            List<Future<List<IssueData>>> results = new ArrayList<>(files.size());
+            for (final InputFile file : files) {
+                results.add(executor.submit(() -> collectIssues(file)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                InputFile file = files.get(i);
+                LOG.debug("analyzing issues in the file: " + file.absolutePath());
+                saveIssues(file, await(results.get(i), file), context);
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Analysis helper function used to analyze specific given project
-     * files and save their metrics into the SonarQube system
+     * Waits for the collected issues of a file
      *
-     * @param file    the file to scan and report for
-     * @param context the project issues sensor context
+     * @param result the pending file issues
+     * @param file   the file the issues are collected for
+     * @return the file issues, empty if the collection was interrupted
+     */
+    private List<IssueData> await(Future<List<IssueData>> result, InputFile file) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Can not analyze the file " + file.absolutePath() + " for issues");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            LOG.error("Can not analyze the file " + file.absolutePath() + " for issues", e.getCause());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Analysis helper function used to collect the reek, roodi and cane
+     * issues of a given project file. It doesn't touch the sensor context
+     * so it can be run by several threads at once.
+     *
+     * @param file the file to collect the issues for
+     * @return the file issues, in the order they are to be saved
      */
-    private void analyzeFile(InputFile file, SensorContext context) throws IOException {
+    private List<IssueData> collectIssues(InputFile file) {
+        List<IssueData> issues = new ArrayList<>();
 
         // fetch reek smells and set file reek issues
         List<ReekSmell> smells = metricfuYamlParser.parseReek(file.relativePath());
         for (ReekSmell smell : smells) {
 
             // TODO: might want to recover severity stats if it seems needed, check the smell class
-            NewIssue issue = context.newIssue();
-            issue.forRule(RuleKey.of(RubyPlugin.KEY_REPOSITORY_REEK, smell.getType()))
-                    .at(issue.newLocation()
-                            .on(file)
-                            .at(file.selectLine(smell.getLines().get(0)))
-                            .message(smell.getMessage()))
-                    .save();
+            issues.add(new IssueData(RuleKey.of(RubyPlugin.KEY_REPOSITORY_REEK, smell.getType()),
+                    smell.getLines().get(0), smell.getMessage()));
         }
 
         // fetch roodi problems and set file roodi issues
@@ -84,15 +133,8 @@ public class MetricfuIssueSensor implements Sensor {
 
             // get the roodi problem check key
             RoodiCheck check = RoodiProblem.messageToKey(problem.getProblem());
-
-            // save the roodi problem data into the sensor context
-            NewIssue issue = context.newIssue();
-            issue.forRule(RuleKey.of(RubyPlugin.KEY_REPOSITORY_ROODI, check.toString()))
-                    .at(issue.newLocation()
-                            .on(file)
-                            .at(file.selectLine(problem.getLine()))
-                            .message(problem.getProblem()))
-                    .save();
+            issues.add(new IssueData(RuleKey.of(RubyPlugin.KEY_REPOSITORY_ROODI, check.toString()),
+                    problem.getLine(), problem.getProblem()));
         }
 
         // fetch cane violations and set file cane issues
@@ -100,39 +142,66 @@ public class MetricfuIssueSensor implements Sensor {
         for (CaneViolation violation : violations) {
 
             // initialize the cane issue with it's appropriate key
-            NewIssue issue = context
-                    .newIssue()
-                    .forRule(RuleKey.of(RubyPlugin.KEY_REPOSITORY_CANE, violation.getKey()));
-            NewIssueLocation location = null;
+            RuleKey ruleKey = RuleKey.of(RubyPlugin.KEY_REPOSITORY_CANE, violation.getKey());
 
             // dependant on the cane violation subtype, set the issue location and message
             if (violation instanceof CaneCommentViolation) {
                 CaneCommentViolation caneCommentViolation = (CaneCommentViolation) violation;
-                location = issue.newLocation()
-                        .on(file)
-                        .at(file.selectLine(caneCommentViolation.getLine()))
-                        .message("Class '" + caneCommentViolation.getClassName()
-                                + "' requires explanatory comments on preceding line.");
+                issues.add(new IssueData(ruleKey, caneCommentViolation.getLine(),
+                        "Class '" + caneCommentViolation.getClassName()
+                                + "' requires explanatory comments on preceding line."));
 
             } else if (violation instanceof CaneComplexityViolation) {
                 CaneComplexityViolation caneComplexityViolation = (CaneComplexityViolation) violation;
-                location = issue.newLocation()
-                        .on(file)
-                        .message("Method '" + caneComplexityViolation.getMethod() + "' has ABC complexity of "
-                                + caneComplexityViolation.getComplexity() + ".");
+                issues.add(new IssueData(ruleKey, IssueData.NO_LINE,
+                        "Method '" + caneComplexityViolation.getMethod() + "' has ABC complexity of "
+                                + caneComplexityViolation.getComplexity() + "."));
 
             } else if (violation instanceof CaneLineStyleViolation) {
                 CaneLineStyleViolation caneLineStyleViolation = (CaneLineStyleViolation) violation;
-                location = issue.newLocation()
-                        .on(file)
-                        .at(file.selectLine(caneLineStyleViolation.getLine()))
-                        .message(caneLineStyleViolation.getDescription() + ".");
+                issues.add(new IssueData(ruleKey, caneLineStyleViolation.getLine(),
+                        caneLineStyleViolation.getDescription() + "."));
             } else {
                 LOG.error("Unauthorized cane violation type");
             }
+        }
+        return issues;
+    }
 
-            // save the final assigned issue type
+    /**
+     * Saves the collected issues of a project file into the SonarQube system
+     *
+     * @param file    the file the issues were collected for
+     * @param issues  the collected file issues
+     * @param context the project issues sensor context
+     */
+    private void saveIssues(InputFile file, List<IssueData> issues, SensorContext context) {
+        for (IssueData data : issues) {
+            NewIssue issue = context.newIssue().forRule(data.ruleKey);
+            NewIssueLocation location = issue.newLocation()
+                    .on(file)
+                    .message(data.message);
+            if (data.line != IssueData.NO_LINE) {
+                location.at(file.selectLine(data.line));
+            }
             issue.at(location).save();
         }
     }
+
+    /**
+     * The rule, line and message of an issue collected before it's saved
+     */
+    private static class IssueData {
+        private static final int NO_LINE = -1;
+
+        private final RuleKey ruleKey;
+        private final int line;
+        private final String message;
+
+        IssueData(RuleKey ruleKey, int line, String message) {
+            this.ruleKey = ruleKey;
+            this.line = line;
+            this.message = message;
+        }
+    }
 }
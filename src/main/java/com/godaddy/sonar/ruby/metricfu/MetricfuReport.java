@@ -0,0 +1,65 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the metricfu report records extracted by the {@link MetricfuYamlReader},
+ * grouped by the relative path of the file they were reported for
+ */
+public class MetricfuReport {
+    private final Map<String, List<SaikuroClassComplexity>> saikuro = new HashMap<>();
+    private final Map<String, List<CaneViolation>> cane = new HashMap<>();
+    private final Map<String, List<RoodiProblem>> roodi = new HashMap<>();
+    private final Map<String, List<ReekSmell>> reek = new HashMap<>();
+    private final ArrayList<FlayReason> flay = new ArrayList<>();
+
+    public Map<String, List<SaikuroClassComplexity>> getSaikuro() {
+        return saikuro;
+    }
+
+    public Map<String, List<CaneViolation>> getCane() {
+        return cane;
+    }
+
+    public Map<String, List<RoodiProblem>> getRoodi() {
+        return roodi;
+    }
+
+    public Map<String, List<ReekSmell>> getReek() {
+        return reek;
+    }
+
+    public List<FlayReason> getFlay() {
+        return flay;
+    }
+
+    /**
+     * Adds an item to the bucket of the given file, creating the bucket if needed
+     *
+     * @param index    the per file index to add to
+     * @param filename the file the item was reported for
+     * @param item     the report item
+     */
+    static <T> void add(Map<String, List<T>> index, String filename, T item) {
+        List<T> items = index.get(filename);
+        if (items == null) {
+            items = new ArrayList<>(2);
+            index.put(filename, items);
+        }
+        items.add(item);
+    }
+
+    /**
+     * Releases the spare capacity of all the buckets of a per file index
+     *
+     * @param index the per file index to compact
+     */
+    static <T> void compact(Map<String, List<T>> index) {
+        for (List<T> items : index.values()) {
+            ((ArrayList<T>) items).trimToSize();
+        }
+    }
+}
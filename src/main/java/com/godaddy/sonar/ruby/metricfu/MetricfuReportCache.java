@@ -0,0 +1,439 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import com.godaddy.sonar.ruby.core.ChecksummedFiles;
+import com.godaddy.sonar.ruby.metricfu.FlayReason.Match;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary sidecar cache of the records extracted from a metricfu report, one file per report section.
+ * A cache file is only used when the size and the modification time of the report it was written for
+ * match the current report, and when its format version and checksum are valid. The SHA-256 digest of
+ * the report is compared too when its modification time is too close to the time it was digested to
+ * tell a later change apart.
+ * <p>
+ * Cache files are written by {@link ChecksummedFiles}, their payload holds the section, the report size,
+ * modification time, digest time and digest, and the records.
+ */
+public class MetricfuReportCache {
+    private static final Logger LOG = Loggers.get(MetricfuReportCache.class);
+
+    static final String CACHE_DIR = "ruby-cache";
+    static final int FORMAT_VERSION = 3;
+
+    private static final int MAGIC = 0x4d465543;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int REPORT_HEADER_LENGTH = 4 + 8 + 8 + 8 + DIGEST_LENGTH;
+    private static final int NULL_VALUE = -1;
+
+    private static final int CANE_COMPLEXITY = 0;
+    private static final int CANE_LINE_STYLE = 1;
+    private static final int CANE_COMMENT = 2;
+
+    private final File cacheDir;
+    private final File report;
+    private byte[] reportDigest = null;
+    private long reportDigested;
+
+    /**
+     * Instantiates a new cache for a report
+     *
+     * @param workDir the scanner working directory the cache directory is created in
+     * @param report  the report file
+     */
+    public MetricfuReportCache(File workDir, File report) {
+        this.cacheDir = new File(workDir, CACHE_DIR);
+        this.report = report;
+    }
+
+    /**
+     * Loads the records of a section from its cache file into the report records
+     *
+     * @param metricfuReport the report records to add the section records to
+     * @param section        the section to load
+     * @return true if the section was loaded, false if the cache file is missing, stale or corrupted
+     */
+    public boolean load(MetricfuReport metricfuReport, MetricfuSection section) {
+        File cacheFile = cacheFile(section);
+        try {
+            ByteBuffer buffer = ChecksummedFiles.read(cacheFile, MAGIC, FORMAT_VERSION, "metricfu cache file");
+            if (buffer == null) {
+                return false;
+            }
+
+            // verify the cache file was written for the current report
+            if (buffer.getInt() != section.ordinal() || !isCurrentReport(buffer)) {
+                LOG.debug("Ignoring stale metricfu cache file '" + cacheFile.getPath() + "'.");
+                return false;
+            }
+
+            // decode the whole payload before adding any record to the report
+            MetricfuReport decoded = new MetricfuReport();
+            decode(buffer, decoded, section);
+            metricfuReport.getSaikuro().putAll(decoded.getSaikuro());
+            metricfuReport.getCane().putAll(decoded.getCane());
+            metricfuReport.getRoodi().putAll(decoded.getRoodi());
+            metricfuReport.getReek().putAll(decoded.getReek());
+            metricfuReport.getFlay().addAll(decoded.getFlay());
+            LOG.debug("Loaded metricfu " + section + " records from cache file '" + cacheFile.getPath() + "'.");
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Unable to read metricfu cache file '" + cacheFile.getPath() + "'.", e);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            LOG.warn("Ignoring corrupted metricfu cache file '" + cacheFile.getPath() + "'.", e);
+        }
+        return false;
+    }
+
+    /**
+     * Writes the records of a section to its cache file, replacing any previous cache file
+     *
+     * @param metricfuReport the report records
+     * @param section        the section to save
+     */
+    public void save(MetricfuReport metricfuReport, MetricfuSection section) {
+        File cacheFile = cacheFile(section);
+        try {
+            byte[] digest = digest();
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(8192);
+            DataOutputStream payloadOutput = new DataOutputStream(payload);
+            payloadOutput.writeInt(section.ordinal());
+            payloadOutput.writeLong(report.length());
+            payloadOutput.writeLong(report.lastModified());
+            payloadOutput.writeLong(reportDigested);
+            payloadOutput.write(digest);
+            encode(payloadOutput, metricfuReport, section);
+            payloadOutput.flush();
+            ChecksummedFiles.write(cacheFile, MAGIC, FORMAT_VERSION, payload);
+            LOG.debug("Saved metricfu " + section + " records to cache file '" + cacheFile.getPath() + "'.");
+        } catch (IOException e) {
+            LOG.warn("Unable to write metricfu cache file '" + cacheFile.getPath() + "'.", e);
+        }
+    }
+
+    /**
+     * Gives the fingerprint of the report, to tell apart the results computed from another report. The digest
+     * stored by the cache files is reused while the report is unchanged, the report is only read when none is.
+     *
+     * @return the size, modification time and SHA-256 digest of the report
+     * @throws IOException when the report could not be read
+     */
+    public String reportFingerprint() throws IOException {
+        for (MetricfuSection section : MetricfuSection.values()) {
+            if (reportDigest != null) {
+                break;
+            }
+            File cacheFile = cacheFile(section);
+            ByteBuffer header;
+            try {
+                header = ChecksummedFiles.readStart(cacheFile, MAGIC, FORMAT_VERSION, REPORT_HEADER_LENGTH);
+            } catch (IOException e) {
+                LOG.debug("Unable to read metricfu cache file '" + cacheFile.getPath() + "'.", e);
+                continue;
+            }
+            if (header != null && header.getInt() == section.ordinal()) {
+                isCurrentReport(header);
+            }
+        }
+        return report.length() + ":" + report.lastModified() + ":" + Base64.getEncoder().encodeToString(digest());
+    }
+
+    /**
+     * Reads the report fingerprint of a cache file header, remembering the report digest it holds when the report
+     * is unchanged
+     *
+     * @param header the cache file payload, after its section
+     * @return true if the cache file was written for the current report
+     * @throws IOException when the report could not be read
+     */
+    private boolean isCurrentReport(ByteBuffer header) throws IOException {
+        byte[] digest = new byte[DIGEST_LENGTH];
+        long size = header.getLong();
+        long lastModified = header.getLong();
+        long digested = header.getLong();
+        header.get(digest);
+        if (size != report.length() || lastModified != report.lastModified()) {
+            return false;
+        }
+
+        // only trust the modification time when any later change would have modified it
+        if (!ChecksummedFiles.isTrusted(lastModified, digested)) {
+            return Arrays.equals(digest, digest());
+        }
+        if (reportDigest == null) {
+            reportDigest = digest;
+            reportDigested = digested;
+        }
+        return true;
+    }
+
+    File cacheFile(MetricfuSection section) {
+        return new File(cacheDir, "metricfu-" + section.name().toLowerCase() + ".bin");
+    }
+
+    private byte[] digest() throws IOException {
+        if (reportDigest == null) {
+            reportDigested = System.currentTimeMillis();
+            try (InputStream input = new FileInputStream(report)) {
+                MessageDigest sha = MessageDigest.getInstance("SHA-256");
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    sha.update(buffer, 0, read);
+                }
+                reportDigest = sha.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available.", e);
+            }
+        }
+        return reportDigest;
+    }
+
+    private static void encode(DataOutputStream output, MetricfuReport metricfuReport, MetricfuSection section) throws IOException {
+        switch (section) {
+            case SAIKURO:
+                output.writeInt(metricfuReport.getSaikuro().size());
+                for (Map.Entry<String, List<SaikuroClassComplexity>> entry : metricfuReport.getSaikuro().entrySet()) {
+                    writeString(output, entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (SaikuroClassComplexity classComplexity : entry.getValue()) {
+                        writeString(output, classComplexity.getName());
+                        output.writeInt(classComplexity.getLines());
+                        output.writeInt(classComplexity.getComplexity());
+                        output.writeInt(classComplexity.getMethods().size());
+                        for (SaikuroMethodComplexity methodComplexity : classComplexity.getMethods()) {
+                            writeString(output, methodComplexity.getName());
+                            output.writeInt(methodComplexity.getLines());
+                            output.writeInt(methodComplexity.getComplexity());
+                        }
+                    }
+                }
+                break;
+            case CANE:
+                output.writeInt(metricfuReport.getCane().size());
+                for (Map.Entry<String, List<CaneViolation>> entry : metricfuReport.getCane().entrySet()) {
+                    writeString(output, entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (CaneViolation violation : entry.getValue()) {
+                        writeString(output, violation.getFile());
+                        if (violation instanceof CaneComplexityViolation) {
+                            CaneComplexityViolation complexity = (CaneComplexityViolation) violation;
+                            output.writeByte(CANE_COMPLEXITY);
+                            writeString(output, complexity.getMethod());
+                            output.writeInt(complexity.getComplexity());
+                        } else if (violation instanceof CaneLineStyleViolation) {
+                            CaneLineStyleViolation lineStyle = (CaneLineStyleViolation) violation;
+                            output.writeByte(CANE_LINE_STYLE);
+                            output.writeInt(lineStyle.getLine());
+                            writeString(output, lineStyle.getDescription());
+                        } else {
+                            CaneCommentViolation comment = (CaneCommentViolation) violation;
+                            output.writeByte(CANE_COMMENT);
+                            output.writeInt(comment.getLine());
+                            writeString(output, comment.getClassName());
+                        }
+                    }
+                }
+                break;
+            case ROODI:
+                output.writeInt(metricfuReport.getRoodi().size());
+                for (Map.Entry<String, List<RoodiProblem>> entry : metricfuReport.getRoodi().entrySet()) {
+                    writeString(output, entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (RoodiProblem problem : entry.getValue()) {
+                        output.writeInt(problem.getLine());
+                        writeString(output, problem.getProblem());
+                    }
+                }
+                break;
+            case REEK:
+                output.writeInt(metricfuReport.getReek().size());
+                for (Map.Entry<String, List<ReekSmell>> entry : metricfuReport.getReek().entrySet()) {
+                    writeString(output, entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (ReekSmell smell : entry.getValue()) {
+                        writeString(output, smell.getMethod());
+                        writeString(output, smell.getMessage());
+                        writeString(output, smell.getType());
+                        List<Integer> lines = smell.getLines();
+                        output.writeInt(lines == null ? NULL_VALUE : lines.size());
+                        if (lines != null) {
+                            for (Integer line : lines) {
+                                output.writeInt(line);
+                            }
+                        }
+                    }
+                }
+                break;
+            default:
+                output.writeInt(metricfuReport.getFlay().size());
+                for (FlayReason reason : metricfuReport.getFlay()) {
+                    writeString(output, reason.getReason());
+                    output.writeInt(reason.getMatches().size());
+                    for (Match match : reason.getMatches()) {
+                        writeString(output, match.getFile());
+                        writeInteger(output, match.getStartLine());
+                        writeInteger(output, match.getLines());
+                    }
+                }
+                break;
+        }
+    }
+
+    private static void decode(ByteBuffer input, MetricfuReport metricfuReport, MetricfuSection section) {
+        int files = readCount(input);
+        if (section == MetricfuSection.FLAY) {
+            ArrayList<FlayReason> reasons = new ArrayList<>(files);
+            for (int i = 0; i < files; i++) {
+                FlayReason reason = new FlayReason(readString(input));
+                int matches = readCount(input);
+                for (int j = 0; j < matches; j++) {
+                    reason.getMatches().add(reason.new Match(readString(input), readInteger(input), readInteger(input)));
+                }
+                reasons.add(reason);
+            }
+            metricfuReport.getFlay().addAll(reasons);
+            return;
+        }
+
+        for (int i = 0; i < files; i++) {
+            String file = readString(input);
+            int count = readCount(input);
+            switch (section) {
+                case SAIKURO:
+                    ArrayList<SaikuroClassComplexity> classes = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        SaikuroClassComplexity classComplexity = new SaikuroClassComplexity();
+                        classComplexity.setFile(file);
+                        classComplexity.setName(readString(input));
+                        classComplexity.setLines(input.getInt());
+                        classComplexity.setComplexity(input.getInt());
+                        int methods = readCount(input);
+                        for (int k = 0; k < methods; k++) {
+                            SaikuroMethodComplexity methodComplexity = new SaikuroMethodComplexity();
+                            methodComplexity.setName(readString(input));
+                            methodComplexity.setLine(input.getInt());
+                            methodComplexity.setComplexity(input.getInt());
+                            classComplexity.getMethods().add(methodComplexity);
+                        }
+                        classes.add(classComplexity);
+                    }
+                    metricfuReport.getSaikuro().put(file, classes);
+                    break;
+                case CANE:
+                    ArrayList<CaneViolation> violations = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        String violationFile = readString(input);
+                        int kind = input.get();
+                        if (kind == CANE_COMPLEXITY) {
+                            CaneComplexityViolation complexity = new CaneComplexityViolation();
+                            complexity.setFile(violationFile);
+                            complexity.setMethod(readString(input));
+                            complexity.setComplexity(input.getInt());
+                            violations.add(complexity);
+                        } else if (kind == CANE_LINE_STYLE) {
+                            CaneLineStyleViolation lineStyle = new CaneLineStyleViolation();
+                            lineStyle.setFile(violationFile);
+                            lineStyle.setLine(input.getInt());
+                            String description = readString(input);
+                            if (description != null) {
+                                lineStyle.setDescription(description);
+                            }
+                            violations.add(lineStyle);
+                        } else if (kind == CANE_COMMENT) {
+                            CaneCommentViolation comment = new CaneCommentViolation();
+                            comment.setFile(violationFile);
+                            comment.setLine(input.getInt());
+                            comment.setClassName(readString(input));
+                            violations.add(comment);
+                        } else {
+                            throw new IllegalArgumentException("Unknown cane violation kind " + kind);
+                        }
+                    }
+                    metricfuReport.getCane().put(file, violations);
+                    break;
+                case ROODI:
+                    ArrayList<RoodiProblem> problems = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        problems.add(new RoodiProblem(file, input.getInt(), readString(input)));
+                    }
+                    metricfuReport.getRoodi().put(file, problems);
+                    break;
+                default:
+                    ArrayList<ReekSmell> smells = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        ReekSmell smell = new ReekSmell(file, readString(input), readString(input), readString(input));
+                        int lines = input.getInt();
+                        for (int k = 0; k < lines; k++) {
+                            smell.addLine(input.getInt());
+                        }
+                        smells.add(smell);
+                    }
+                    metricfuReport.getReek().put(file, smells);
+                    break;
+            }
+        }
+        if (input.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected trailing cache data");
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_VALUE);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer input) {
+        int length = input.getInt();
+        if (length == NULL_VALUE) {
+            return null;
+        }
+        if (length < 0 || length > input.remaining()) {
+            throw new IllegalArgumentException("Invalid cached string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream output, Integer value) throws IOException {
+        output.writeBoolean(value != null);
+        output.writeInt(value == null ? 0 : value);
+    }
+
+    private static Integer readInteger(ByteBuffer input) {
+        boolean present = input.get() != 0;
+        int value = input.getInt();
+        return present ? value : null;
+    }
+
+    private static int readCount(ByteBuffer input) {
+        int count = input.getInt();
+        if (count < 0 || count > input.remaining()) {
+            throw new IllegalArgumentException("Invalid cached record count " + count);
+        }
+        return count;
+    }
+}
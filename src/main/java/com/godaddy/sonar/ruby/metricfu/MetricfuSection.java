@@ -0,0 +1,40 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+/**
+ * The metricfu report tool sections consumed by the plugin sensors
+ */
+public enum MetricfuSection {
+    SAIKURO(":saikuro"),
+    CANE(":cane"),
+    ROODI(":roodi"),
+    REEK(":reek"),
+    FLAY(":flay");
+
+    private final String key;
+
+    MetricfuSection(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the top level report key of the section
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Finds the section corresponding to a top level report key
+     *
+     * @param key the report key
+     * @return the matching section or null if the section isn't consumed by the plugin
+     */
+    public static MetricfuSection fromKey(String key) {
+        for (MetricfuSection section : values()) {
+            if (section.key.equals(key)) {
+                return section;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,607 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import com.godaddy.sonar.ruby.metricfu.FlayReason.Match;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming reader of the metricfu yaml report.
+ * <p>
+ * Walks the low level SnakeYAML parser events and builds the typed report records
+ * directly, so the generic node tree of the whole report is never materialized.
+ * Memory use is bounded by the extracted records instead of the raw document.
+ */
+public class MetricfuYamlReader {
+    private static final char ESCAPE = '\u001B';
+
+    private final Iterator<Event> events;
+    private Event lookahead = null;
+
+    /**
+     * Instantiates a new metricfu yaml reader
+     *
+     * @param reader the report character stream
+     */
+    public MetricfuYamlReader(Reader reader) {
+        this.events = new Yaml().parse(reader).iterator();
+    }
+
+    /**
+     * Reads the whole report stream and extracts the tool sections records
+     *
+     * @return the report records grouped by file
+     */
+    public MetricfuReport read() {
+        MetricfuReport report = new MetricfuReport();
+        read(report, EnumSet.allOf(MetricfuSection.class));
+        return report;
+    }
+
+    /**
+     * Reads the requested tool sections records of the report stream into the given report.
+     * Other sections are skipped event by event without building any node, and the stream
+     * isn't consumed any further once all of the requested sections were read.
+     *
+     * @param report   the report to add the records to
+     * @param sections the tool sections to read
+     */
+    public void read(MetricfuReport report, Set<MetricfuSection> sections) {
+
+        // skip the stream and document start events up to the root node
+        while (peek() != null && !(peek() instanceof CollectionStartEvent) && !(peek() instanceof ScalarEvent)) {
+            next();
+        }
+        if (peek() == null || !enterMapping()) {
+            return;
+        }
+
+        // dispatch each requested top level tool section to its reader
+        int remaining = sections.size();
+        while (remaining > 0 && !atMappingEnd()) {
+            MetricfuSection section = MetricfuSection.fromKey(scalar());
+            if (section == null || !sections.contains(section)) {
+                skipNode();
+                continue;
+            }
+            switch (section) {
+                case SAIKURO:
+                    readSaikuro(report);
+                    break;
+                case CANE:
+                    readCane(report);
+                    break;
+                case ROODI:
+                    readRoodi(report);
+                    break;
+                case REEK:
+                    readReek(report);
+                    break;
+                default:
+                    readFlay(report);
+                    break;
+            }
+            remaining--;
+        }
+    }
+
+    private void readSaikuro(MetricfuReport report) {
+        if (!enterMapping()) {
+            return;
+        }
+        while (!atMappingEnd()) {
+            if (!":files".equals(scalar())) {
+                skipNode();
+                continue;
+            }
+            if (!enterSequence()) {
+                continue;
+            }
+
+            // read each file entry, keeping only the first entry of every file
+            while (!atSequenceEnd()) {
+                if (!enterMapping()) {
+                    continue;
+                }
+                String file = null;
+                ArrayList<SaikuroClassComplexity> classes = new ArrayList<>();
+                while (!atMappingEnd()) {
+                    String key = scalar();
+                    if (":filename".equals(key)) {
+                        file = scalar();
+                    } else if (":classes".equals(key)) {
+                        if (enterSequence()) {
+                            while (!atSequenceEnd()) {
+                                SaikuroClassComplexity classComplexity = readSaikuroClass();
+                                if (classComplexity != null) {
+                                    classes.add(classComplexity);
+                                }
+                            }
+                            next();
+                        }
+                    } else {
+                        skipNode();
+                    }
+                }
+                next();
+
+                if (file != null && !report.getSaikuro().containsKey(file)) {
+                    for (SaikuroClassComplexity classComplexity : classes) {
+                        classComplexity.setFile(file);
+                    }
+                    classes.trimToSize();
+                    report.getSaikuro().put(file, classes);
+                }
+            }
+            next();
+        }
+        next();
+    }
+
+    private SaikuroClassComplexity readSaikuroClass() {
+        if (!enterMapping()) {
+            return null;
+        }
+        SaikuroClassComplexity classComplexity = new SaikuroClassComplexity();
+        while (!atMappingEnd()) {
+            String key = scalar();
+            if (":class_name".equals(key)) {
+                classComplexity.setName(scalar());
+            } else if (":lines".equals(key)) {
+                classComplexity.setLines(safeInteger(scalar()));
+            } else if (":complexity".equals(key)) {
+                classComplexity.setComplexity(safeInteger(scalar()));
+            } else if (":methods".equals(key)) {
+                if (enterSequence()) {
+                    while (!atSequenceEnd()) {
+                        if (!enterMapping()) {
+                            continue;
+                        }
+                        SaikuroMethodComplexity methodComplexity = new SaikuroMethodComplexity();
+                        while (!atMappingEnd()) {
+                            String methodKey = scalar();
+                            if (":name".equals(methodKey)) {
+                                methodComplexity.setName(scalar());
+                            } else if (":complexity".equals(methodKey)) {
+                                methodComplexity.setComplexity(safeInteger(scalar()));
+                            } else if (":lines".equals(methodKey)) {
+                                methodComplexity.setLine(safeInteger(scalar()));
+                            } else {
+                                skipNode();
+                            }
+                        }
+                        next();
+                        classComplexity.getMethods().add(methodComplexity);
+                    }
+                    next();
+                }
+            } else {
+                skipNode();
+            }
+        }
+        next();
+        return classComplexity;
+    }
+
+    private void readCane(MetricfuReport report) {
+        if (!enterMapping()) {
+            return;
+        }
+
+        // cane violations of a file are reported complexity first, then line style and comment
+        Map<String, List<CaneViolation>> complexity = new HashMap<>();
+        Map<String, List<CaneViolation>> lineStyle = new HashMap<>();
+        Map<String, List<CaneViolation>> comment = new HashMap<>();
+
+        while (!atMappingEnd()) {
+            if (!":violations".equals(scalar())) {
+                skipNode();
+                continue;
+            }
+            if (!enterMapping()) {
+                continue;
+            }
+            while (!atMappingEnd()) {
+                String kind = scalar();
+                if (!enterSequence()) {
+                    continue;
+                }
+                while (!atSequenceEnd()) {
+                    Map<String, String> row = readFlatMapping();
+                    if (row == null) {
+                        continue;
+                    }
+                    if (":abc_complexity".equals(kind)) {
+                        CaneComplexityViolation violation = new CaneComplexityViolation();
+                        violation.setFile(row.get(":file"));
+                        violation.setMethod(row.get(":method"));
+                        violation.setComplexity(Integer.parseInt(row.get(":complexity")));
+                        MetricfuReport.add(complexity, violation.getFile(), violation);
+                    } else if (":line_style".equals(kind) || ":comment".equals(kind)) {
+                        String parts[] = row.get(":line").split(":");
+                        if (parts[0].length() == 0) {
+                            continue;
+                        }
+                        if (":line_style".equals(kind)) {
+                            CaneLineStyleViolation violation = new CaneLineStyleViolation();
+                            violation.setFile(parts[0]);
+                            violation.setLine(Integer.parseInt(parts[1]));
+                            violation.setDescription(row.get(":description"));
+                            MetricfuReport.add(lineStyle, parts[0], violation);
+                        } else {
+                            CaneCommentViolation violation = new CaneCommentViolation();
+                            violation.setFile(parts[0]);
+                            violation.setLine(Integer.parseInt(parts[1]));
+                            violation.setClassName(row.get(":class_name"));
+                            MetricfuReport.add(comment, parts[0], violation);
+                        }
+                    }
+                }
+                next();
+            }
+            next();
+        }
+        next();
+
+        // merge the violation kinds into the per file buckets in report order
+        for (Map<String, List<CaneViolation>> kind : Arrays.asList(complexity, lineStyle, comment)) {
+            for (Map.Entry<String, List<CaneViolation>> entry : kind.entrySet()) {
+                for (CaneViolation violation : entry.getValue()) {
+                    MetricfuReport.add(report.getCane(), entry.getKey(), violation);
+                }
+            }
+        }
+        MetricfuReport.compact(report.getCane());
+    }
+
+    private void readRoodi(MetricfuReport report) {
+        if (!enterMapping()) {
+            return;
+        }
+        while (!atMappingEnd()) {
+            if (!":problems".equals(scalar())) {
+                skipNode();
+                continue;
+            }
+            if (!enterSequence()) {
+                continue;
+            }
+            while (!atSequenceEnd()) {
+                Map<String, String> row = readFlatMapping();
+                if (row == null) {
+                    continue;
+                }
+
+                // create a new roodi problem and keep it if it's valid
+                RoodiProblem problem = new RoodiProblem();
+                problem.setFile(stripColors(safeString(row.get(":file"))));
+                problem.setLine(safeInteger(row.get(":line")));
+                problem.setProblem(stripColors(safeString(row.get(":problem"))));
+                if (problem.getFile().length() > 0 && problem.getLine() > 0) {
+                    MetricfuReport.add(report.getRoodi(), problem.getFile(), problem);
+                }
+            }
+            next();
+        }
+        next();
+        MetricfuReport.compact(report.getRoodi());
+    }
+
+    private void readReek(MetricfuReport report) {
+        if (!enterMapping()) {
+            return;
+        }
+        while (!atMappingEnd()) {
+            if (!":matches".equals(scalar())) {
+                skipNode();
+                continue;
+            }
+            if (!enterSequence()) {
+                continue;
+            }
+
+            // read each file entry, keeping only the first entry of every file
+            while (!atSequenceEnd()) {
+                if (!enterMapping()) {
+                    continue;
+                }
+                String file = "";
+                ArrayList<ReekSmell> smells = new ArrayList<>();
+                while (!atMappingEnd()) {
+                    String key = scalar();
+                    if (":file_path".equals(key)) {
+                        file = safeString(scalar());
+                    } else if (":code_smells".equals(key)) {
+                        if (enterSequence()) {
+                            while (!atSequenceEnd()) {
+                                ReekSmell smell = readReekSmell();
+                                if (smell != null) {
+                                    smells.add(smell);
+                                }
+                            }
+                            next();
+                        }
+                    } else {
+                        skipNode();
+                    }
+                }
+                next();
+
+                if (!report.getReek().containsKey(file)) {
+                    for (ReekSmell smell : smells) {
+                        smell.setFile(file);
+                    }
+                    smells.trimToSize();
+                    report.getReek().put(file, smells);
+                }
+            }
+            next();
+        }
+        next();
+    }
+
+    private ReekSmell readReekSmell() {
+        if (!enterMapping()) {
+            return null;
+        }
+        ReekSmell smell = new ReekSmell();
+        smell.setMethod("");
+        smell.setMessage("");
+        smell.setType("");
+        while (!atMappingEnd()) {
+            String key = scalar();
+            if (":method".equals(key)) {
+                smell.setMethod(safeString(scalar()));
+            } else if (":message".equals(key)) {
+                smell.setMessage(safeString(scalar()));
+            } else if (":type".equals(key)) {
+                smell.setType(safeString(scalar()));
+            } else if (":lines".equals(key)) {
+                if (enterSequence()) {
+                    while (!atSequenceEnd()) {
+                        smell.addLine(safeInteger(scalar()));
+                    }
+                    next();
+                }
+            } else {
+                skipNode();
+            }
+        }
+        next();
+        return smell;
+    }
+
+    private void readFlay(MetricfuReport report) {
+        if (!enterMapping()) {
+            return;
+        }
+        while (!atMappingEnd()) {
+            if (!":matches".equals(scalar())) {
+                skipNode();
+                continue;
+            }
+            if (!enterSequence()) {
+                continue;
+            }
+            while (!atSequenceEnd()) {
+                if (!enterMapping()) {
+                    continue;
+                }
+
+                // create new flay reason and read its matches
+                FlayReason reason = new FlayReason();
+                reason.setReason("");
+                while (!atMappingEnd()) {
+                    String key = scalar();
+                    if (":reason".equals(key)) {
+                        reason.setReason(safeString(scalar()));
+                    } else if (":matches".equals(key)) {
+                        if (enterSequence()) {
+                            while (!atSequenceEnd()) {
+                                Map<String, String> row = readFlatMapping();
+                                if (row != null) {
+                                    reason.getMatches().add(toMatch(reason, row));
+                                }
+                            }
+                            next();
+                        }
+                    } else {
+                        skipNode();
+                    }
+                }
+                next();
+                report.getFlay().add(reason);
+            }
+            next();
+        }
+        next();
+        ((ArrayList<FlayReason>) report.getFlay()).trimToSize();
+    }
+
+    private Match toMatch(FlayReason reason, Map<String, String> row) {
+        Match match = reason.new Match(row.get(":name"));
+
+        // If flay was run with --diff, we should have the number
+        // of lines in the duplication. If not, make it 1.
+        Integer line = safeInteger(row.get(":line"));
+        if (line > 0) {
+            match.setStartLine(line);
+            match.setLines(1);
+        } else {
+            Integer start = safeInteger(row.get(":start"));
+            if (start > 0) {
+                match.setStartLine(start);
+            }
+            Integer lines = safeInteger(row.get(":lines"));
+            if (lines > 0) {
+                match.setLines(lines);
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Reads a mapping of scalar values, nested collections are skipped
+     *
+     * @return the mapping keys and values or null if the next node isn't a mapping
+     */
+    private Map<String, String> readFlatMapping() {
+        if (!enterMapping()) {
+            return null;
+        }
+        Map<String, String> row = new HashMap<>(8);
+        while (!atMappingEnd()) {
+            String key = scalar();
+            row.put(key, scalar());
+        }
+        next();
+        return row;
+    }
+
+    private Event peek() {
+        if (lookahead == null && events.hasNext()) {
+            lookahead = events.next();
+        }
+        return lookahead;
+    }
+
+    private Event next() {
+        Event event = peek();
+        lookahead = null;
+        return event;
+    }
+
+    private boolean atMappingEnd() {
+        return peek() == null || peek() instanceof MappingEndEvent;
+    }
+
+    private boolean atSequenceEnd() {
+        return peek() == null || peek() instanceof SequenceEndEvent;
+    }
+
+    /**
+     * Consumes the start of a mapping, any other node is skipped
+     *
+     * @return true if a mapping was entered
+     */
+    private boolean enterMapping() {
+        if (peek() instanceof MappingStartEvent) {
+            next();
+            return true;
+        }
+        skipNode();
+        return false;
+    }
+
+    /**
+     * Consumes the start of a sequence, any other node is skipped
+     *
+     * @return true if a sequence was entered
+     */
+    private boolean enterSequence() {
+        if (peek() instanceof SequenceStartEvent) {
+            next();
+            return true;
+        }
+        skipNode();
+        return false;
+    }
+
+    /**
+     * Consumes the next node and returns its value if it's a scalar
+     *
+     * @return the scalar value, null for null scalars and non scalar nodes
+     */
+    private String scalar() {
+        Event event = peek();
+        if (!(event instanceof ScalarEvent)) {
+            skipNode();
+            return null;
+        }
+        next();
+        ScalarEvent scalar = (ScalarEvent) event;
+        String value = scalar.getValue();
+        if (scalar.getImplicit().canOmitTagInPlainScalar()
+                && (value.isEmpty() || "~".equals(value) || "null".equalsIgnoreCase(value))) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Consumes the next node with all of its children without building them
+     */
+    private void skipNode() {
+        Event event = next();
+        if (event instanceof AliasEvent || !(event instanceof CollectionStartEvent)) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0 && peek() != null) {
+            event = next();
+            if (event instanceof CollectionStartEvent) {
+                depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                depth--;
+            }
+        }
+    }
+
+    private static String safeString(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s;
+    }
+
+    /**
+     * Removes the ANSI color sequences, ESC [ digits m, of a string. Most strings have none and are returned
+     * as they are after a scan for the escape char.
+     */
+    static String stripColors(String s) {
+        int escape = s.indexOf(ESCAPE);
+        if (escape < 0) {
+            return s;
+        }
+        StringBuilder stripped = new StringBuilder(s.length());
+        int start = 0;
+        while (escape >= 0) {
+            int end = escape + 2;
+            while (end < s.length() && s.charAt(end) >= '0' && s.charAt(end) <= '9') {
+                end++;
+            }
+            if (escape + 1 < s.length() && s.charAt(escape + 1) == '[' && end > escape + 2
+                    && end < s.length() && (s.charAt(end) == 'm' || s.charAt(end) == 'M')) {
+                stripped.append(s, start, escape);
+                start = end + 1;
+            }
+            escape = s.indexOf(ESCAPE, escape + 1);
+        }
+        return stripped.append(s, start, s.length()).toString();
+    }
+
+    private static Integer safeInteger(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
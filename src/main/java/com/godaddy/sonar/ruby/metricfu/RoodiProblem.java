@@ -3,8 +3,10 @@ package com.godaddy.sonar.ruby.metricfu;
 import org.sonar.api.rule.Severity;
 
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class RoodiProblem {
@@ -37,30 +39,37 @@ public class RoodiProblem {
     ;
 
 
-    private static final Map<Pattern, RoodiCheck> messageToKeyMap;
+    private static final Pattern messagePattern;
     private static final Map<RoodiCheck, String> keyToSeverityMap;
 
     static {
-        HashMap<Pattern, RoodiCheck> mapPatternToCheck = new HashMap<Pattern, RoodiCheck>();
-        mapPatternToCheck.put(Pattern.compile("^Found = in conditional\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.AssignmentInConditionalCheck);
-        mapPatternToCheck.put(Pattern.compile("^Case statement is missing an else clause\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.CaseMissingElseCheck);
-        mapPatternToCheck.put(Pattern.compile("^Class \"[^\"]+\" has \\d+ lines\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.ClassLineCountCheck);
-        mapPatternToCheck.put(Pattern.compile("^Class name \"[^\"]+\" should match pattern ", Pattern.CASE_INSENSITIVE), RoodiCheck.ClassNameCheck);
-        mapPatternToCheck.put(Pattern.compile("^Don't use class variables ", Pattern.CASE_INSENSITIVE), RoodiCheck.ClassVariableCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method \"[^\"]+\" uses the argument \"[^\"]+\" for internal control\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.ControlCouplingCheck);
-        mapPatternToCheck.put(Pattern.compile("^Class overrides method '[^']+'\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.CoreMethodOverrideCheck);
-        mapPatternToCheck.put(Pattern.compile("^Block cyclomatic complexity is \\d+\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.CyclomaticComplexityBlockCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method name \"[^\"]+\" cyclomatic complexity is \\d+\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.CyclomaticComplexityMethodCheck);
-        mapPatternToCheck.put(Pattern.compile("^Rescue block should not be empty\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.EmptyRescueBodyCheck);
-        mapPatternToCheck.put(Pattern.compile("^Don't use 'for' loops\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.ForLoopCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method \"[^\"]+\" has \\d+ lines\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.MethodLineCountCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method name \"[^\"]+\" should match pattern ", Pattern.CASE_INSENSITIVE), RoodiCheck.MethodNameCheck);
-        mapPatternToCheck.put(Pattern.compile("^Module \"[^\"]+\" has \\d+ lines\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.ModuleLineCountCheck);
-        mapPatternToCheck.put(Pattern.compile("^Module name \"[^\"]+\" should match pattern ", Pattern.CASE_INSENSITIVE), RoodiCheck.ModuleNameCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method name \"[^\"]+\" n-path complexity is ", Pattern.CASE_INSENSITIVE), RoodiCheck.NpathComplexityMethodCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method name \"[^\"]+\" has \\d+ parameters\\.", Pattern.CASE_INSENSITIVE), RoodiCheck.ParameterNumberCheck);
-        mapPatternToCheck.put(Pattern.compile("^Method name \"[^\"]+\" has an ABC metric score of ", Pattern.CASE_INSENSITIVE), RoodiCheck.AbcMetricMethodCheck);
-        messageToKeyMap = Collections.unmodifiableMap(mapPatternToCheck);
+        // the message prefixes of the checks are combined into a single pattern, each prefix in a group named
+        // after its check, so that a message is classified in one pass
+        EnumMap<RoodiCheck, String> messagePatterns = new EnumMap<RoodiCheck, String>(RoodiCheck.class);
+        messagePatterns.put(RoodiCheck.AssignmentInConditionalCheck, "Found = in conditional\\.");
+        messagePatterns.put(RoodiCheck.CaseMissingElseCheck, "Case statement is missing an else clause\\.");
+        messagePatterns.put(RoodiCheck.ClassLineCountCheck, "Class \"[^\"]+\" has \\d+ lines\\.");
+        messagePatterns.put(RoodiCheck.ClassNameCheck, "Class name \"[^\"]+\" should match pattern ");
+        messagePatterns.put(RoodiCheck.ClassVariableCheck, "Don't use class variables ");
+        messagePatterns.put(RoodiCheck.ControlCouplingCheck, "Method \"[^\"]+\" uses the argument \"[^\"]+\" for internal control\\.");
+        messagePatterns.put(RoodiCheck.CoreMethodOverrideCheck, "Class overrides method '[^']+'\\.");
+        messagePatterns.put(RoodiCheck.CyclomaticComplexityBlockCheck, "Block cyclomatic complexity is \\d+\\.");
+        messagePatterns.put(RoodiCheck.CyclomaticComplexityMethodCheck, "Method name \"[^\"]+\" cyclomatic complexity is \\d+\\.");
+        messagePatterns.put(RoodiCheck.EmptyRescueBodyCheck, "Rescue block should not be empty\\.");
+        messagePatterns.put(RoodiCheck.ForLoopCheck, "Don't use 'for' loops\\.");
+        messagePatterns.put(RoodiCheck.MethodLineCountCheck, "Method \"[^\"]+\" has \\d+ lines\\.");
+        messagePatterns.put(RoodiCheck.MethodNameCheck, "Method name \"[^\"]+\" should match pattern ");
+        messagePatterns.put(RoodiCheck.ModuleLineCountCheck, "Module \"[^\"]+\" has \\d+ lines\\.");
+        messagePatterns.put(RoodiCheck.ModuleNameCheck, "Module name \"[^\"]+\" should match pattern ");
+        messagePatterns.put(RoodiCheck.NpathComplexityMethodCheck, "Method name \"[^\"]+\" n-path complexity is ");
+        messagePatterns.put(RoodiCheck.ParameterNumberCheck, "Method name \"[^\"]+\" has \\d+ parameters\\.");
+        messagePatterns.put(RoodiCheck.AbcMetricMethodCheck, "Method name \"[^\"]+\" has an ABC metric score of ");
+        StringBuilder combined = new StringBuilder();
+        for (Map.Entry<RoodiCheck, String> entry : messagePatterns.entrySet()) {
+            combined.append(combined.length() > 0 ? "|" : "").append("(?<").append(entry.getKey().name()).append('>')
+                    .append(entry.getValue()).append(')');
+        }
+        messagePattern = Pattern.compile(combined.toString(), Pattern.CASE_INSENSITIVE);
 
         HashMap<RoodiCheck, String> mapKeyToSeverity = new HashMap<RoodiCheck, String>();
         mapKeyToSeverity.put(RoodiCheck.AbcMetricMethodCheck, Severity.MAJOR);
@@ -124,9 +133,15 @@ public class RoodiProblem {
     }
 
     public static RoodiCheck messageToKey(String message) {
-        for (Pattern p : messageToKeyMap.keySet()) {
-            if (p.matcher(message).find()) {
-                return messageToKeyMap.get(p);
+        Matcher matcher = messagePattern.matcher(message);
+        if (!matcher.lookingAt()) {
+            return null;
+        }
+
+        // only the group named after the check of the matched prefix is set
+        for (RoodiCheck check : RoodiCheck.values()) {
+            if (matcher.start(check.name()) >= 0) {
+                return check;
             }
         }
         return null;
@@ -1,13 +1,11 @@
 package com.godaddy.sonar.ruby.parsers;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
-import org.apache.commons.lang.StringUtils;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 public final class CommentCountParser {
 
@@ -17,23 +15,11 @@ public final class CommentCountParser {
     }
 
     public static int countLinesOfComment(File file) {
-        int numComments = 0;
-        LineIterator iterator = null;
         try {
-            iterator = FileUtils.lineIterator(file);
-
-            while (iterator.hasNext()) {
-                String line = iterator.nextLine();
-                if (StringUtils.startsWith(line.trim(), "#")) {
-                    numComments++;
-                }
-            }
+            return new LineMetricsScanner().scan(file, Charset.defaultCharset()).getCommentLines();
         } catch (IOException e) {
             LOG.error("Error determining comment count for file " + file, e);
-        } finally {
-            LineIterator.closeQuietly(iterator);
+            return 0;
         }
-
-        return numComments;
     }
 }
\ No newline at end of file
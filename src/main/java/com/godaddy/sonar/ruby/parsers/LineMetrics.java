@@ -0,0 +1,70 @@
+package com.godaddy.sonar.ruby.parsers;
+
+/**
+ * The line counts of a ruby source file, as computed by {@link LineMetricsScanner}.
+ */
+public class LineMetrics {
+    private final int lines;
+    private final int blankLines;
+    private final int commentLines;
+    private final int linesOfCode;
+
+    public LineMetrics(int lines, int blankLines, int commentLines, int linesOfCode) {
+        this.lines = lines;
+        this.blankLines = blankLines;
+        this.commentLines = commentLines;
+        this.linesOfCode = linesOfCode;
+    }
+
+    /**
+     * @return the number of lines of the file, the empty remainder after the last line break excluded
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the number of lines with white spaces only
+     */
+    public int getBlankLines() {
+        return blankLines;
+    }
+
+    /**
+     * @return the number of comment lines
+     */
+    public int getCommentLines() {
+        return commentLines;
+    }
+
+    /**
+     * @return the number of lines containing code (NCLOC)
+     */
+    public int getLinesOfCode() {
+        return linesOfCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LineMetrics other = (LineMetrics) o;
+        return lines == other.lines && blankLines == other.blankLines
+                && commentLines == other.commentLines && linesOfCode == other.linesOfCode;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((lines * 31 + blankLines) * 31 + commentLines) * 31 + linesOfCode;
+    }
+
+    @Override
+    public String toString() {
+        return "LineMetrics{lines=" + lines + ", blankLines=" + blankLines
+                + ", commentLines=" + commentLines + ", linesOfCode=" + linesOfCode + "}";
+    }
+}
@@ -0,0 +1,140 @@
+package com.godaddy.sonar.ruby.parsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+/**
+ * Computes the line metrics of a ruby source file in a single buffered read: total, blank
+ * and comment lines, and lines of code.
+ *
+ * Lines are classified on their chars, following the ruby constructs spanning several lines
+ * with {@link RubyLineScanner}: a `#` only starts a comment outside of the literals, block
+ * comments and heredoc bodies. Lines of the data section are neither code nor comment. A line
+ * break ends a line, so the empty remainder after the last line break is not a line, nor is
+ * an empty file. Files in an ASCII compatible encoding are not even decoded.
+ *
+ * A scanner reuses its buffers from file to file, so it is not thread safe: each worker
+ * has to use its own instance.
+ */
+public class LineMetricsScanner extends RubyLineScanner {
+    // line kinds
+    private static final int BLANK = 0;
+    private static final int COMMENT = 1;
+    private static final int CODE = 2;
+
+    private int lines;
+    private int blankLines;
+    private int commentLines;
+    private int linesOfCode;
+
+    /**
+     * Scans a source file. Files in an ASCII compatible encoding are scanned on their raw bytes, without
+     * decoding, see {@link RubyLineScanner#read(File, Charset, MessageDigest)}.
+     *
+     * @param file the source file
+     * @param charset the encoding of the file
+     * @return the line metrics of the file
+     * @throws IOException when the file could not be read
+     */
+    public LineMetrics scan(File file, Charset charset) throws IOException {
+        return scan(file, charset, null);
+    }
+
+    /**
+     * Scans a source file, digesting its bytes while they are read
+     *
+     * @param file the source file
+     * @param charset the encoding of the file
+     * @param digest the digest to update with all of the bytes of the file, null if none
+     * @return the line metrics of the file
+     * @throws IOException when the file could not be read
+     * @see #scan(File, Charset)
+     */
+    public LineMetrics scan(File file, Charset charset, MessageDigest digest) throws IOException {
+        start();
+        read(file, charset, digest);
+        return new LineMetrics(lines, blankLines, commentLines, linesOfCode);
+    }
+
+    /**
+     * Scans a source, the reader is not closed
+     *
+     * @param reader the reader of the source
+     * @return the line metrics of the source
+     * @throws IOException when the source could not be read
+     */
+    public LineMetrics scan(Reader reader) throws IOException {
+        start();
+        read(reader);
+        return new LineMetrics(lines, blankLines, commentLines, linesOfCode);
+    }
+
+    private void start() {
+        lines = 0;
+        blankLines = 0;
+        commentLines = 0;
+        linesOfCode = 0;
+    }
+
+    @Override
+    protected void scanLine(int kind) {
+        lines++;
+        int lineKind;
+        if (kind == CODE_LINE) {
+            lineKind = scanCode();
+        } else if (kind == BLOCK_COMMENT_LINE) {
+            lineKind = isBlank() ? BLANK : COMMENT;
+        } else if (kind == HEREDOC_LINE) {
+            lineKind = isBlank() ? BLANK : CODE;
+        } else {
+            return;
+        }
+
+        if (lineKind == COMMENT) {
+            commentLines++;
+        } else if (lineKind == CODE) {
+            linesOfCode++;
+        } else {
+            blankLines++;
+        }
+    }
+
+    /**
+     * Scans the chars of a line of code, skipping the literals and detecting the comments
+     */
+    private int scanCode() {
+        boolean code = false;
+        boolean comment = false;
+        int i = 0;
+        while (i < lineLength) {
+            if (inLiteral()) {
+                int next = scanLiteral(i);
+                code |= skipWhitespaces(i) < next;
+                i = next;
+                continue;
+            }
+
+            char c = line[i];
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+            if (c == '#') {
+                comment = true;
+                break;
+            }
+            code = true;
+            if (c == '$' || c == '\\') {
+                // special global variables, e.g. $' or $", and escaped chars
+                i += 2;
+                continue;
+            }
+            int next = scanLiteralStart(i);
+            i = next >= 0 ? next : i + 1;
+        }
+        return code ? CODE : comment ? COMMENT : BLANK;
+    }
+}
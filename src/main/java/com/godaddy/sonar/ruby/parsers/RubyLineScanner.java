@@ -0,0 +1,564 @@
+package com.godaddy.sonar.ruby.parsers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads a ruby source line by line for the scanners classifying or tokenizing its lines, and follows the
+ * constructs spanning lines: `=begin`/`=end` block comments, heredoc bodies, the `__END__` data section and
+ * the string, symbol, regular expression and `%` literals.
+ *
+ * Each line is kept in a reusable char buffer, no line is copied into a String, and given to
+ * {@link #scanLine(int)} along with its kind. The chars of a code line are scanned by the subclass, which
+ * skips the literals with {@link #scanLiteralStart(int)} and {@link #scanLiteral(int)}.
+ *
+ * A scanner reuses its buffers from file to file, so it is not thread safe: each worker has to use its own
+ * instance.
+ */
+public abstract class RubyLineScanner {
+    /**
+     * The size in bytes from which the files are memory-mapped
+     */
+    public static final int MAPPING_THRESHOLD = 1024 * 1024;
+
+    // line kinds
+    protected static final int CODE_LINE = 0;
+    protected static final int BLOCK_COMMENT_LINE = 1;
+    protected static final int HEREDOC_LINE = 2;
+    protected static final int DATA_LINE = 3;
+
+    // literal kinds
+    protected static final int STRING_LITERAL = 0;
+    protected static final int SYMBOL_LITERAL = 1;
+    protected static final int REGEXP_LITERAL = 2;
+    protected static final int CHAR_LITERAL = 3;
+    protected static final int HEREDOC_LITERAL = 4;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INITIAL_LINE_CAPACITY = 256;
+
+    // the line buffer grown by a longer line is released once the line is scanned
+    private static final int MAXIMUM_RETAINED_LINE_CAPACITY = BUFFER_SIZE;
+
+    // the keywords which are values, after which `/`, `%`, `?` and `<<` are operators
+    private static final String[] VALUE_KEYWORDS = {
+            "end", "false", "nil", "self", "true", "__FILE__", "__LINE__", "__method__", "__ENCODING__"
+    };
+
+    private final char[] chars = new char[BUFFER_SIZE];
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+
+    /**
+     * The chars of the current line, without its line break
+     */
+    protected char[] line = new char[INITIAL_LINE_CAPACITY];
+
+    /**
+     * The number of chars of the current line
+     */
+    protected int lineLength;
+
+    /**
+     * The number of the current line, from 1
+     */
+    protected int lineNumber;
+
+    private boolean afterCarriageReturn;
+    private boolean inBlockComment;
+    private boolean dataSection;
+    private final Deque<Heredoc> heredocs = new ArrayDeque<>();
+    private Heredoc heredoc;
+
+    // the literal spanning the current position
+    private boolean inLiteral;
+    private int literalKind;
+    private char literalOpen;
+    private char literalClose;
+    private boolean literalInterpolated;
+    private int literalDepth;
+    private int interpolationDepth;
+
+    /**
+     * Scans a line
+     *
+     * @param kind the kind of the line: {@link #CODE_LINE}, which may continue a literal, {@link #BLOCK_COMMENT_LINE},
+     *             {@link #HEREDOC_LINE} for the body and terminator lines of a heredoc, or {@link #DATA_LINE} from the
+     *             `__END__` line on
+     */
+    protected abstract void scanLine(int kind);
+
+    /**
+     * Reads a source file. Files in an ASCII compatible encoding are read on their raw bytes, without decoding:
+     * line breaks and all of the ruby syntax chars are single ASCII bytes in these encodings, and never occur
+     * inside the multi-byte sequences of other chars. Files above {@link #MAPPING_THRESHOLD} bytes are
+     * memory-mapped rather than copied into the read buffer.
+     *
+     * @param file    the source file
+     * @param charset the encoding of the file
+     * @param digest  the digest to update with all of the bytes of the file, null if none
+     * @throws IOException when the file could not be read
+     */
+    protected void read(File file, Charset charset, MessageDigest digest) throws IOException {
+        if (!isAsciiCompatible(charset)) {
+            InputStream input = new FileInputStream(file);
+            try (Reader reader = new InputStreamReader(digest != null ? new DigestInputStream(input, digest) : input, charset)) {
+                read(reader);
+            }
+            return;
+        }
+
+        start();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAPPING_THRESHOLD && size <= Integer.MAX_VALUE) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (digest != null) {
+                    digest.update(mapped.duplicate());
+                }
+                readBytes(mapped, StandardCharsets.UTF_8.equals(charset));
+            } else {
+                boolean skipByteOrderMark = StandardCharsets.UTF_8.equals(charset);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+                while (channel.read(byteBuffer) != -1) {
+                    byteBuffer.flip();
+                    if (digest != null) {
+                        digest.update(bytes, 0, byteBuffer.limit());
+                    }
+                    readBytes(byteBuffer, skipByteOrderMark);
+                    byteBuffer.clear();
+                    skipByteOrderMark = false;
+                }
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Reads a source, the reader is not closed
+     *
+     * @param reader the reader of the source
+     * @throws IOException when the source could not be read
+     */
+    protected void read(Reader reader) throws IOException {
+        start();
+        int count;
+        boolean firstChar = true;
+        while ((count = reader.read(chars, 0, chars.length)) != -1) {
+            // a byte order mark is not part of the first line
+            int i = firstChar && count > 0 && chars[0] == '\uFEFF' ? 1 : 0;
+            firstChar = false;
+            for (; i < count; i++) {
+                accept(chars[i]);
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Checks whether the ruby syntax chars of an encoding are single ASCII bytes which can't be part of
+     * the encoding of another char, so that its bytes can be scanned without decoding
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125") || name.startsWith("KOI8-");
+    }
+
+    private void readBytes(ByteBuffer byteBuffer, boolean skipByteOrderMark) {
+        if (skipByteOrderMark && byteBuffer.remaining() >= 3 && byteBuffer.get(byteBuffer.position()) == (byte) 0xEF
+                && byteBuffer.get(byteBuffer.position() + 1) == (byte) 0xBB && byteBuffer.get(byteBuffer.position() + 2) == (byte) 0xBF) {
+            byteBuffer.position(byteBuffer.position() + 3);
+        }
+        while (byteBuffer.hasRemaining()) {
+            // bytes above 0x7F are only parts of non ASCII chars, which are neither white spaces nor syntax chars
+            accept((char) (byteBuffer.get() & 0xFF));
+        }
+    }
+
+    private void start() {
+        lineLength = 0;
+        lineNumber = 1;
+        afterCarriageReturn = false;
+        inBlockComment = false;
+        dataSection = false;
+        heredocs.clear();
+        heredoc = null;
+        inLiteral = false;
+    }
+
+    private void finish() {
+        // the last line is only pending when some chars follow the last line break
+        if (lineLength > 0) {
+            endLine();
+        }
+    }
+
+    private void accept(char c) {
+        if (c == '\n') {
+            // the second char of a \r\n line break, the line is already ended
+            if (!afterCarriageReturn) {
+                endLine();
+            }
+            afterCarriageReturn = false;
+        } else if (c == '\r') {
+            endLine();
+            afterCarriageReturn = true;
+        } else {
+            afterCarriageReturn = false;
+            if (lineLength == line.length) {
+                char[] grown = new char[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    private void endLine() {
+        int kind;
+        if (dataSection) {
+            kind = DATA_LINE;
+        } else if (heredoc != null) {
+            kind = HEREDOC_LINE;
+            if (isHeredocTerminator()) {
+                heredoc = null;
+            }
+        } else if (inBlockComment) {
+            kind = BLOCK_COMMENT_LINE;
+            inBlockComment = !startsWithKeyword("=end");
+        } else if (!inLiteral && startsWithKeyword("=begin")) {
+            kind = BLOCK_COMMENT_LINE;
+            inBlockComment = true;
+        } else if (!inLiteral && lineLength == 7 && startsWith(0, "__END__")) {
+            kind = DATA_LINE;
+            dataSection = true;
+        } else {
+            kind = CODE_LINE;
+        }
+        scanLine(kind);
+
+        if (heredoc == null && !inLiteral) {
+            // the bodies of the heredocs started on the line follow it
+            heredoc = heredocs.poll();
+        }
+        lineLength = 0;
+        lineNumber++;
+        if (line.length > MAXIMUM_RETAINED_LINE_CAPACITY) {
+            line = new char[INITIAL_LINE_CAPACITY];
+        }
+    }
+
+    /**
+     * @return true if the current position is inside a literal started on a previous line or chars
+     */
+    protected boolean inLiteral() {
+        return inLiteral;
+    }
+
+    /**
+     * @return the kind of the latest literal started
+     */
+    protected int literalKind() {
+        return literalKind;
+    }
+
+    /**
+     * Scans the start of a literal, if one starts at an index of a code line: a string, a `%` literal, a regular
+     * expression, a char literal or a heredoc. A `/`, `%`, `?` or `<<` only starts a literal where an operator
+     * could not take place, see {@link #startsLiteral(int)}. The literals which may span lines are entered, to be
+     * continued by {@link #scanLiteral(int)}, and the body of a heredoc is given with the lines following the
+     * current one.
+     *
+     * @param i the index of a char which is not part of a literal
+     * @return the index of the char after the start of the literal, or after the whole char literal or heredoc
+     * start, -1 if no literal starts at the index
+     */
+    protected int scanLiteralStart(int i) {
+        char c = line[i];
+        switch (c) {
+            case '"':
+            case '`':
+                enterLiteral(STRING_LITERAL, c, c, true);
+                return i + 1;
+            case '\'':
+                enterLiteral(STRING_LITERAL, c, c, false);
+                return i + 1;
+            case '%':
+                return startsLiteral(i) && isPercentLiteral(i) ? scanPercentLiteral(i) : -1;
+            case '/':
+                if (!startsLiteral(i)) {
+                    return -1;
+                }
+                enterLiteral(REGEXP_LITERAL, c, c, true);
+                return i + 1;
+            case '?':
+                if (!startsLiteral(i) || !isCharLiteral(i)) {
+                    return -1;
+                }
+                literalKind = CHAR_LITERAL;
+                return i + (line[i + 1] == '\\' ? 3 : 2);
+            case '<':
+                return isHeredoc(i) ? scanHeredoc(i) : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Enters a literal which may span lines
+     *
+     * @param kind         the kind of the literal
+     * @param open         the opening delimiter, nested in the literal if it differs from the closing one
+     * @param close        the closing delimiter
+     * @param interpolated true if the literal may hold `#{}` interpolations
+     */
+    protected void enterLiteral(int kind, char open, char close, boolean interpolated) {
+        inLiteral = true;
+        literalKind = kind;
+        literalOpen = open == close ? 0 : open;
+        literalClose = close;
+        literalInterpolated = interpolated;
+        literalDepth = 0;
+        interpolationDepth = 0;
+    }
+
+    /**
+     * Scans the chars of the literal the current position is in, up to its closing delimiter
+     *
+     * @param i the index of the first char to scan
+     * @return the index of the char after the literal, and its options for a regular expression, or the line length
+     * when the literal is not closed on the line
+     */
+    protected int scanLiteral(int i) {
+        while (i < lineLength) {
+            char c = line[i];
+            if (interpolationDepth > 0) {
+                // the code of an interpolation is skipped, up to its closing brace
+                if (c == '{') {
+                    interpolationDepth++;
+                } else if (c == '}') {
+                    interpolationDepth--;
+                }
+                i++;
+            } else if (c == '\\') {
+                i += 2;
+            } else if (literalInterpolated && c == '#' && i + 1 < lineLength && line[i + 1] == '{') {
+                interpolationDepth = 1;
+                i += 2;
+            } else if (c == literalOpen) {
+                literalDepth++;
+                i++;
+            } else if (c == literalClose && literalDepth > 0) {
+                literalDepth--;
+                i++;
+            } else if (c == literalClose) {
+                i++;
+                if (literalKind == REGEXP_LITERAL) {
+                    // options of the regular expression
+                    while (i < lineLength && line[i] >= 'a' && line[i] <= 'z') {
+                        i++;
+                    }
+                }
+                inLiteral = false;
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return lineLength;
+    }
+
+    /**
+     * Whether a `/`, `%`, `?` or `<<` starts a literal rather than being an operator: at the start of an expression,
+     * or after a method name when it follows a space but is not followed by one, as in `split /,/`. It is an
+     * operator after a value: a number, a variable, a closing bracket or quote, or a keyword such as `self`.
+     */
+    private boolean startsLiteral(int i) {
+        int previous = i - 1;
+        while (previous >= 0 && line[previous] <= ' ') {
+            previous--;
+        }
+        if (previous < 0) {
+            return true;
+        }
+        char c = line[previous];
+        if (!isIdentifierChar(c)) {
+            return c != ')' && c != ']' && c != '}' && c != '"' && c != '\'' && c != '`';
+        }
+        int start = previous;
+        while (start > 0 && isIdentifierChar(line[start - 1])) {
+            start--;
+        }
+        if (!isIdentifierStart(line[start]) || start > 0 && (line[start - 1] == '@' || line[start - 1] == '$')) {
+            return false;
+        }
+        for (String keyword : VALUE_KEYWORDS) {
+            if (keyword.length() == previous + 1 - start && startsWith(start, keyword)) {
+                return false;
+            }
+        }
+        return previous < i - 1 && i + 1 < lineLength && line[i + 1] > ' ' && line[i + 1] != '=';
+    }
+
+    private boolean isPercentLiteral(int i) {
+        if (i + 1 >= lineLength) {
+            return false;
+        }
+        char c = line[i + 1];
+        if ("qQwWiIrsx".indexOf(c) >= 0) {
+            return i + 2 < lineLength && isDelimiter(line[i + 2]);
+        }
+        return isDelimiter(c);
+    }
+
+    private int scanPercentLiteral(int start) {
+        int i = start + 1;
+        char type = 'Q';
+        if (Character.isLetter(line[i])) {
+            type = line[i++];
+        }
+        int kind = type == 'r' ? REGEXP_LITERAL : type == 's' || type == 'i' || type == 'I' ? SYMBOL_LITERAL : STRING_LITERAL;
+        char open = line[i];
+        enterLiteral(kind, open, closingDelimiter(open), !Character.isLowerCase(type) || type == 'r' || type == 'x');
+        return i + 1;
+    }
+
+    private boolean isCharLiteral(int i) {
+        if (i + 1 >= lineLength || line[i + 1] <= ' ') {
+            return false;
+        }
+        int end = i + (line[i + 1] == '\\' ? 3 : 2);
+        return end <= lineLength && (end == lineLength || !isIdentifierChar(line[end]));
+    }
+
+    private boolean isHeredoc(int i) {
+        if (i + 2 >= lineLength || line[i + 1] != '<') {
+            return false;
+        }
+        char c = line[i + 2];
+        if (c == '~' || c == '-') {
+            return i + 3 < lineLength && (isIdentifierStart(line[i + 3]) || line[i + 3] == '\'' || line[i + 3] == '"' || line[i + 3] == '`');
+        }
+        // without a quote or an indentation flag, only capitalized identifiers are taken, so that
+        // `class << self` is not a heredoc, and `<<ID` is an append operator after a value
+        return (c == '\'' || c == '"' || c == '_' || c >= 'A' && c <= 'Z') && startsLiteral(i);
+    }
+
+    private int scanHeredoc(int start) {
+        int i = start + 2;
+        boolean indented = line[i] == '~' || line[i] == '-';
+        if (indented) {
+            i++;
+        }
+        String identifier;
+        char quote = line[i];
+        if (quote == '\'' || quote == '"' || quote == '`') {
+            int end = i + 1;
+            while (end < lineLength && line[end] != quote) {
+                end++;
+            }
+            identifier = new String(line, i + 1, end - i - 1);
+            i = Math.min(end + 1, lineLength);
+        } else {
+            int end = i;
+            while (end < lineLength && isIdentifierChar(line[end])) {
+                end++;
+            }
+            identifier = new String(line, i, end - i);
+            i = end;
+        }
+        heredocs.add(new Heredoc(identifier, indented));
+        literalKind = HEREDOC_LITERAL;
+        return i;
+    }
+
+    private boolean isHeredocTerminator() {
+        int start = heredoc.indented ? skipWhitespaces(0) : 0;
+        int end = lineLength;
+        while (end > start && line[end - 1] <= ' ') {
+            end--;
+        }
+        return end - start == heredoc.identifier.length() && startsWith(start, heredoc.identifier);
+    }
+
+    private static char closingDelimiter(char open) {
+        switch (open) {
+            case '(':
+                return ')';
+            case '[':
+                return ']';
+            case '{':
+                return '}';
+            case '<':
+                return '>';
+            default:
+                return open;
+        }
+    }
+
+    private static boolean isDelimiter(char c) {
+        return !Character.isLetterOrDigit(c) && c > ' ' && c != '=' && c < 0x80;
+    }
+
+    protected static boolean isIdentifierStart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c >= 0x80;
+    }
+
+    protected static boolean isIdentifierChar(char c) {
+        return isIdentifierStart(c) || c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return true if the line starts with the keyword, followed by the line end or a white space
+     */
+    private boolean startsWithKeyword(String keyword) {
+        return startsWith(0, keyword) && (lineLength == keyword.length() || line[keyword.length()] <= ' ');
+    }
+
+    protected boolean startsWith(int start, String prefix) {
+        if (lineLength - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected int skipWhitespaces(int start) {
+        int i = start;
+        while (i < lineLength && line[i] <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    protected boolean isBlank() {
+        return skipWhitespaces(0) == lineLength;
+    }
+
+    private static class Heredoc {
+        private final String identifier;
+        private final boolean indented;
+
+        Heredoc(String identifier, boolean indented) {
+            this.identifier = identifier;
+            this.indented = indented;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.godaddy.sonar.ruby.simplecovrcov;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.measures.CoverageMeasuresBuilder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes the coverage information of a report by the path of the covered files relative to the project
+ * base directory, so that a report produced in another location (e.g. `/usr/src/app` in a CI container)
+ * still matches the analyzed files.
+ *
+ * Report paths are normalized, then the longest configured prefix they start with is replaced by its
+ * local root. Prefixes are configured as `from=to` entries, where `to` is a directory absolute or relative
+ * to the project base directory, and defaults to the base directory itself when it's empty or omitted.
+ */
+public class CoverageIndex {
+    private static final Logger LOG = Loggers.get(CoverageIndex.class);
+
+    private final Map<String, CoverageMeasuresBuilder> byRelativePath;
+    private final Map<String, CoverageMeasuresBuilder> byAbsolutePath;
+
+    /**
+     * Builds the index of a coverage report results
+     *
+     * @param coveredFiles a map where a key is a file name as found in the report and a value is its coverage
+     * @param baseDir the project base directory
+     * @param pathPrefixes the path prefixes mapping entries, `from=to`
+     */
+    public CoverageIndex(Map<String, CoverageMeasuresBuilder> coveredFiles, File baseDir, String[] pathPrefixes) {
+        String base = normalize(baseDir.getAbsolutePath());
+        List<String[]> prefixes = parsePrefixes(pathPrefixes, base);
+
+        this.byRelativePath = Maps.newHashMapWithExpectedSize(coveredFiles.size());
+        this.byAbsolutePath = Maps.newHashMapWithExpectedSize(coveredFiles.size());
+        for (Map.Entry<String, CoverageMeasuresBuilder> entry : coveredFiles.entrySet()) {
+            String path = resolve(normalize(entry.getKey()), prefixes);
+            String relativePath = relativize(base, path);
+            Map<String, CoverageMeasuresBuilder> index = relativePath != null ? byRelativePath : byAbsolutePath;
+            String key = relativePath != null ? relativePath : path;
+            if (index.containsKey(key)) {
+                LOG.warn("Coverage of '" + entry.getKey() + "' ignored, another report path matches the same file '" + key + "'.");
+                continue;
+            }
+            index.put(key, entry.getValue());
+        }
+    }
+
+    /**
+     * Looks up the coverage information of an analyzed file
+     *
+     * @param inputFile the analyzed file
+     * @return the coverage information of the file or `null` if the report doesn't cover it
+     */
+    public CoverageMeasuresBuilder get(InputFile inputFile) {
+        CoverageMeasuresBuilder fileCoverage = byRelativePath.get(normalize(inputFile.relativePath()));
+        return fileCoverage != null ? fileCoverage : byAbsolutePath.get(normalize(inputFile.absolutePath()));
+    }
+
+    /**
+     * @return the number of indexed files
+     */
+    public int size() {
+        return byRelativePath.size() + byAbsolutePath.size();
+    }
+
+    private static List<String[]> parsePrefixes(String[] pathPrefixes, String base) {
+        List<String[]> prefixes = new ArrayList<>();
+        if (pathPrefixes == null) {
+            return prefixes;
+        }
+        for (String entry : pathPrefixes) {
+            if (StringUtils.isBlank(entry)) {
+                continue;
+            }
+            String from = normalize(StringUtils.substringBefore(entry, "=").trim());
+            String to = StringUtils.substringAfter(entry, "=").trim();
+            if (to.isEmpty()) {
+                to = base;
+            } else if (!new File(to).isAbsolute() && !to.startsWith("/")) {
+                to = base + "/" + to;
+            }
+            prefixes.add(new String[]{from, normalize(to)});
+        }
+        // the longest prefix wins
+        prefixes.sort(Comparator.comparingInt((String[] prefix) -> prefix[0].length()).reversed());
+        return prefixes;
+    }
+
+    private static String resolve(String path, List<String[]> prefixes) {
+        for (String[] prefix : prefixes) {
+            String rest = stripPrefix(path, prefix[0]);
+            if (rest != null) {
+                return rest.isEmpty() ? prefix[1] : normalize(prefix[1] + "/" + rest);
+            }
+        }
+        return path;
+    }
+
+    private static String relativize(String base, String path) {
+        String rest = stripPrefix(path, base);
+        return rest == null || rest.isEmpty() ? null : rest;
+    }
+
+    /**
+     * @return the rest of the path after the prefix directory, or `null` if the path is not under it
+     */
+    private static String stripPrefix(String path, String prefix) {
+        if (prefix.isEmpty() || !path.startsWith(prefix)) {
+            return null;
+        }
+        if (path.length() == prefix.length()) {
+            return "";
+        }
+        if (prefix.endsWith("/")) {
+            return path.substring(prefix.length());
+        }
+        return path.charAt(prefix.length()) == '/' ? path.substring(prefix.length() + 1) : null;
+    }
+
+    /**
+     * Normalizes a path: forward slashes only, no `.` or `..` segment, no duplicate or trailing slash
+     */
+    static String normalize(String path) {
+        String slashed = path.replace('\\', '/');
+        boolean absolute = slashed.startsWith("/");
+        List<String> segments = new ArrayList<>();
+        for (String segment : StringUtils.split(slashed, '/')) {
+            if (".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment) && !segments.isEmpty() && !"..".equals(segments.get(segments.size() - 1))) {
+                segments.remove(segments.size() - 1);
+                continue;
+            }
+            segments.add(segment);
+        }
+        String normalized = StringUtils.join(segments, '/');
+        return absolute ? "/" + normalized : normalized;
+    }
+}
@@ -4,6 +4,7 @@ import org.sonar.api.measures.CoverageMeasuresBuilder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 public interface CoverageReportFileAnalyzer {
@@ -15,4 +16,13 @@ public interface CoverageReportFileAnalyzer {
      * @throws IOException when coverage report file could not be read
      */
     Map<String, CoverageMeasuresBuilder> analyze(File file) throws IOException;
+
+    /**
+     * Analyzes several coverage report files, e.g. produced by parallel test runs, as a single report
+     *
+     * @param files the instances of the coverage report files
+     * @return a map where a key is a file name and a value is a coverage information merged from all reports
+     * @throws IOException when a coverage report file could not be read
+     */
+    Map<String, CoverageMeasuresBuilder> analyze(List<File> files) throws IOException;
 }
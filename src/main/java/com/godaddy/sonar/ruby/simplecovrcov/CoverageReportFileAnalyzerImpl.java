@@ -1,23 +1,31 @@
 package com.godaddy.sonar.ruby.simplecovrcov;
 
-import com.godaddy.sonar.ruby.simplecovrcov.data.CoverageReport;
-import com.godaddy.sonar.ruby.simplecovrcov.data.Mark;
-import com.godaddy.sonar.ruby.simplecovrcov.data.Reporter;
-import com.godaddy.sonar.ruby.simplecovrcov.data.ReporterItem;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.sonar.api.ExtensionPoint;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.measures.CoverageMeasuresBuilder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
 
 @BatchSide
 @ExtensionPoint
 public class CoverageReportFileAnalyzerImpl implements CoverageReportFileAnalyzer {
+    private static final Logger LOG = Loggers.get(CoverageReportFileAnalyzerImpl.class);
+
     private CoverageSettings settings;
 
     /**
@@ -37,131 +45,139 @@ public class CoverageReportFileAnalyzerImpl implements CoverageReportFileAnalyze
      * @throws IOException when coverage report file could not be read
      */
     public Map<String, CoverageMeasuresBuilder> analyze(File file) throws IOException {
-        CoverageReport coverageReport = readAndParseReportFile(file);
-        return processCoverageReport(coverageReport);
+        return analyze(Collections.singletonList(file));
     }
 
     /**
-     * Reads and parses coverage report file and provides high-level representation as data objects.
-     *
-     * Actually, for parsing {@link CoverageReportFileParser} is used. Please, take a look inside it for more
-     * information regarding parsing mechanism.
+     * Analyzes several coverage report files as a single report. The files are streamed concurrently, one
+     * parser per file, and the hits of every report are summed into the merged ones as soon as it's read,
+     * so that the whole analysis lasts about as long as the one of the largest report.
      *
-     * @param file an instance of a coverage report file
-     * @return a data object which represents a coverage report file
+     * @param files the instances of the coverage report files
+     * @return a map where a key is a file name and a value is a coverage information merged from all reports
      * @throws IOException when a coverage report file could not be read
      */
-    private CoverageReport readAndParseReportFile(File file) throws IOException {
-        return new CoverageReportFileParser(file).parse();
-    }
+    public Map<String, CoverageMeasuresBuilder> analyze(List<File> files) throws IOException {
+        Predicate<String> suiteFilter = suiteFilter();
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            Map<String, LineHits> hitsByFile = Maps.newHashMap();
+            for (File file : files) {
+                mergeHits(hitsByFile, readAndParseReportFile(file, suiteFilter));
+            }
+            return processCoverageReport(hitsByFile);
+        }
 
-    /**
-     * Processes a whole coverage report
-     *
-     * @param coverageReport a data object with full information about coverage report
-     * @return a map with coverage information per file
-     */
-    private Map<String, CoverageMeasuresBuilder> processCoverageReport(CoverageReport coverageReport) {
-        Map<String, CoverageMeasuresBuilder> coveredFiles = Maps.newHashMap();
-        // Iterate through all available reporters (test suites), but for first check
-        // should it be taken for procession or not, and for that decision a settings are used.
-        coverageReport.getReporters()
-                .stream()
-                .filter(reporter -> shouldProcessReporterWithName(reporter.getName()))
-                .forEach(reporter -> processReporter(reporter, coveredFiles));
-        return coveredFiles;
+        LOG.info("Merging " + files.size() + " coverage reports using " + threads + " threads.");
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("simplecov-reports-%d").setDaemon(true).build());
+        try {
+            CompletionService<Map<String, LineHits>> results = new ExecutorCompletionService<>(executor);
+            for (final File file : files) {
+                results.submit(() -> readAndParseReportFile(file, suiteFilter));
+            }
+            // the first read report is the merge target, the next ones are added to it as they complete
+            Map<String, LineHits> hitsByFile = null;
+            for (int i = 0; i < files.size(); i++) {
+                Map<String, LineHits> reportHits = await(results);
+                if (hitsByFile == null) {
+                    hitsByFile = reportHits;
+                } else {
+                    mergeHits(hitsByFile, reportHits);
+                }
+            }
+            return processCoverageReport(hitsByFile);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
-     * Checks reporter by its name regarding availability for processing
+     * Waits for the next read coverage report
      *
-     * @param reporterName a name of a checking reporter
-     * @return a boolean flag which specifies either should this reporter be processed or not
+     * @param results the pending summed hits of the reports
+     * @return the summed hits of the next completed report
+     * @throws IOException when a coverage report file could not be read
      */
-    private Boolean shouldProcessReporterWithName(String reporterName) {
-        return getSettings().processAllSuites() || getSettings().configuredSuitesNames().contains(reporterName);
+    private Map<String, LineHits> await(CompletionService<Map<String, LineHits>> results) throws IOException {
+        try {
+            return results.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the coverage reports", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Unable to read a coverage report", e.getCause());
+        }
     }
 
     /**
-     * Processes a given reporter or test suite information
+     * Adds the summed hits of a report to the ones of the previously read reports
      *
-     * @param reporter a data object which represents reporter or test suite in a report
-     * @param coveredFiles a map with coverage information per file
+     * @param hitsByFile the merged hits, by file name
+     * @param reportHits the hits of a report, by file name
      */
-    private void processReporter(Reporter reporter, Map<String, CoverageMeasuresBuilder> coveredFiles) {
-        // Iterate through all items or file inside a given reporter
-        for (ReporterItem reporterItem : reporter.getItems()) {
-            // For first fetch file name
-            String filename = reporterItem.getFilename();
-            // Try to find coverage builder (in a case, when file is represented in several test suites) and create new
-            // one as a fallback for a case, when file is processing first time.
-            CoverageMeasuresBuilder fileCoverage = coveredFiles.getOrDefault(filename, CoverageMeasuresBuilder.create());
-            // Run processing reporter item
-            processReporterItem(reporterItem, fileCoverage);
-            // Replace or add new coverage builder for a given file
-            coveredFiles.put(reporterItem.getFilename(), fileCoverage);
+    private void mergeHits(Map<String, LineHits> hitsByFile, Map<String, LineHits> reportHits) {
+        for (Map.Entry<String, LineHits> entry : reportHits.entrySet()) {
+            LineHits lineHits = hitsByFile.get(entry.getKey());
+            if (lineHits == null) {
+                hitsByFile.put(entry.getKey(), entry.getValue());
+            } else {
+                lineHits.addAll(entry.getValue());
+            }
         }
     }
 
     /**
-     * Processes one reporter item
+     * Streams a coverage report file and sums the hits by line of every covered file.
+     *
+     * Actually, for parsing {@link CoverageReportFileParser} is used. Please, take a look inside it for more
+     * information regarding parsing mechanism.
      *
-     * @param reporterItem a data object which represents a file in a test suite
-     * @param fileCoverage an instance of a coverage builder for SonarQube
+     * @param file an instance of a coverage report file
+     * @param suiteFilter the predicate selecting the suites to process, the other ones are skipped by the parser
+     * @return a map where a key is a file name and a value is the summed hits by line of this file
+     * @throws IOException when a coverage report file could not be read
      */
-    private void processReporterItem(ReporterItem reporterItem, CoverageMeasuresBuilder fileCoverage) {
-        ArrayList<Mark> reporterItemMarks = (ArrayList<Mark>) reporterItem.getMarks();
-        // Iterate through all marks inside this reporter item and process them one by one
-        for (int markId = 0; markId < reporterItemMarks.size(); markId++) {
-            Mark mark = reporterItemMarks.get(markId);
-            processMark(mark, markId + 1, fileCoverage);
-        }
+    private Map<String, LineHits> readAndParseReportFile(File file, Predicate<String> suiteFilter) throws IOException {
+        Map<String, LineHits> hitsByFile = Maps.newHashMap();
+        // Sum hits of the files of the selected suites only
+        new CoverageReportFileParser(file).parse(suiteFilter,
+                (suiteName, filename) -> hitsByFile.computeIfAbsent(filename, name -> new LineHits()));
+        return hitsByFile;
     }
 
     /**
-     * Processes one given mark and fills hits for it
+     * Processes the summed hits of the whole coverage report
      *
-     * @param mark a data object with one mark information, which represents one line
-     * @param lineNumber an index of this mark
-     * @param fileCoverage an instance of a coverage builder for SonarQube
+     * @param hitsByFile a map with summed hits by line per file
+     * @return a map with coverage information per file
      */
-    private void processMark(Mark mark, Integer lineNumber, CoverageMeasuresBuilder fileCoverage) {
-        // If mark (or line) has `null` value then skip further processing
-        if (mark.getIsNull()) { return; }
-        // Read hits count as integer value
-        int hitsCount = mark.getAsLong().intValue();
-        // Call some magic merging hits counters method
-        mergeHitsCounters(hitsCount, lineNumber, fileCoverage);
+    private Map<String, CoverageMeasuresBuilder> processCoverageReport(Map<String, LineHits> hitsByFile) {
+        // Build the coverage information of every file only once, when hits of all suites are summed
+        Map<String, CoverageMeasuresBuilder> coveredFiles = Maps.newHashMapWithExpectedSize(hitsByFile.size());
+        for (Map.Entry<String, LineHits> entry : hitsByFile.entrySet()) {
+            coveredFiles.put(entry.getKey(), entry.getValue().toCoverageMeasuresBuilder());
+        }
+        return coveredFiles;
     }
 
     /**
-     * Merges hits count of a specified line with already existing coverage results for a given file.
-     *
-     * Coverage information for one file could be presented in several suites. So we have to merge all results per file.
-     * Considering how {@link org.sonar.api.measures.CoverageMeasuresBuilder#setHits} works this a little bit
-     * tricky method is needed: if you already have added some coverage info for the particular line, then you can not
-     * add more information. Please, visit method source code for more understanding. It's very small :-)
+     * Builds the predicate selecting the suites to process, the settings are only read once per analysis
      *
-     * @param hitsCount a hits count value for a line
-     * @param lineNumber an index of a line in the file
-     * @param fileCoverage an instance of a coverage builder for SonarQube
+     * @return a predicate which specifies either should a suite with a given name be processed or not
      */
-    private void mergeHitsCounters(int hitsCount, int lineNumber, CoverageMeasuresBuilder fileCoverage) {
-        // Instantiate some temporal variable to keep all current information about hits by line from builder
-        SortedMap<Integer, Integer> hitsByLine = Maps.newTreeMap();
-        // Fill this variable by hits by line information from coverage builder
-        hitsByLine.putAll(fileCoverage.getHitsByLine());
-        // Get current hits value for a given line by its number. If the line with such number is not represented
-        // in a coverage builder, then lets use default value `0`.
-        int oldHits = hitsByLine.getOrDefault(lineNumber, 0);
-        // Update hits information for a given line by sum of old value and new hits value
-        hitsByLine.put(lineNumber, oldHits + hitsCount);
-        // Reset hits by line information
-        fileCoverage.reset();
-        // Iterate through all entries in the temporal variable and restore hits by line information into coverage builder
-        for(Map.Entry<Integer, Integer> entry : hitsByLine.entrySet()) {
-            fileCoverage.setHits(entry.getKey(), entry.getValue());
+    private Predicate<String> suiteFilter() {
+        if (getSettings().processAllSuites()) {
+            return suiteName -> true;
         }
+        Set<String> suitesNames = getSettings().configuredSuitesNames();
+        return suitesNames::contains;
     }
 
     private CoverageSettings getSettings() {
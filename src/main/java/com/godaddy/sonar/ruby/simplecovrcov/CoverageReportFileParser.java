@@ -1,20 +1,18 @@
 package com.godaddy.sonar.ruby.simplecovrcov;
 
 import com.godaddy.sonar.ruby.simplecovrcov.data.CoverageReport;
-import com.godaddy.sonar.ruby.simplecovrcov.data.Mark;
 import com.godaddy.sonar.ruby.simplecovrcov.data.Reporter;
 import com.godaddy.sonar.ruby.simplecovrcov.data.ReporterItem;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import org.apache.commons.io.FileUtils;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Map;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
 
 /**
  * Created by sergio on 3/30/17.
@@ -22,6 +20,37 @@ import java.util.Map;
 public class CoverageReportFileParser {
     private File file;
 
+    /**
+     * Receives the hits of the files of a coverage report while it is being read
+     */
+    public interface HitsConsumer {
+        /**
+         * Provides the accumulator the hits of a file in a test suite are added to
+         *
+         * @param suiteName a name of the test suite
+         * @param filename a name of the covered file
+         * @return the hits accumulator of the file, or `null` to skip the file hits in this suite
+         */
+        LineHits lineHitsFor(String suiteName, String filename);
+    }
+
+    /**
+     * Visits the test suites and files of a coverage report while it is being read
+     */
+    private interface ReportVisitor {
+        /**
+         * Visits a test suite
+         *
+         * @return whether the suite files should be visited, the whole suite is skipped otherwise
+         */
+        boolean visitSuite(String suiteName);
+
+        /**
+         * Visits a file of a test suite, the visitor has to consume the file hits value from the reader
+         */
+        void visitFile(String suiteName, String filename, JsonReader reader) throws IOException;
+    }
+
     /**
      * Instantiates a new parser instance
      *
@@ -39,55 +68,261 @@ public class CoverageReportFileParser {
      */
     public CoverageReport parse() throws IOException {
         CoverageReport coverageReport = new CoverageReport();
+        read(new ReportVisitor() {
+            private Reporter reporter;
 
-        String fileString = FileUtils.readFileToString(file, "UTF-8");
+            @Override
+            public boolean visitSuite(String suiteName) {
+                reporter = new Reporter(suiteName);
+                coverageReport.addReporter(reporter);
+                return true;
+            }
 
-        JsonParser parser = new JsonParser();
-        // Parse coverage report file as JSON
-        JsonObject resultJsonObject = parser.parse(fileString).getAsJsonObject();
+            @Override
+            public void visitFile(String suiteName, String filename, JsonReader reader) throws IOException {
+                reporter.addItem(buildReporterItem(filename, reader));
+            }
+        });
+        return coverageReport;
+    }
 
-        // Iterate through all test suites inside coverage report
-        for(Map.Entry coverageMapEntry : resultJsonObject.entrySet()){
-            coverageReport.addReporter(buildReporter(coverageMapEntry));
+    /**
+     * Streams a file with coverage information, adding the hits of every line directly to the accumulators
+     * provided by the consumer. Neither the whole report text nor its tree are held in memory, so memory use
+     * only depends on the number of covered files.
+     *
+     * @param consumer the consumer providing hits accumulators per suite and file
+     * @throws IOException when couldn't read a file with coverage report
+     */
+    public void parse(HitsConsumer consumer) throws IOException {
+        parse(suiteName -> true, consumer);
+    }
+
+    /**
+     * Streams a file with coverage information like {@link #parse(HitsConsumer)}, but only for the selected test
+     * suites. The other suites are skipped at the token level, without reading their files nor hits.
+     *
+     * @param suiteFilter the predicate selecting the test suites by name
+     * @param consumer the consumer providing hits accumulators per suite and file
+     * @throws IOException when couldn't read a file with coverage report
+     */
+    public void parse(Predicate<String> suiteFilter, HitsConsumer consumer) throws IOException {
+        read(new ReportVisitor() {
+            @Override
+            public boolean visitSuite(String suiteName) {
+                return suiteFilter.test(suiteName);
+            }
+
+            @Override
+            public void visitFile(String suiteName, String filename, JsonReader reader) throws IOException {
+                LineHits lineHits = consumer.lineHitsFor(suiteName, filename);
+                if (lineHits == null) {
+                    reader.skipValue();
+                } else {
+                    readLineHits(reader, lineHits);
+                }
+            }
+        });
+    }
+
+    /**
+     * Walks through all test suites of the coverage report and the files of their `coverage` objects
+     *
+     * @param visitor the visitor of the suites and files
+     * @throws IOException when couldn't read a file with coverage report
+     */
+    private void read(ReportVisitor visitor) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            // Iterate through all test suites inside coverage report
+            while (reader.hasNext()) {
+                String suiteName = reader.nextName();
+                if (reader.peek() != JsonToken.BEGIN_OBJECT || !visitor.visitSuite(suiteName)) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    // A coverage object contains an information about what files are contained
+                    // in this test suite and hits information per file
+                    if (!"coverage".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        visitor.visitFile(suiteName, reader.nextName(), reader);
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
         }
-        return coverageReport;
     }
 
     /**
-     * Builds data object for a particular test suite
+     * Adds the hits by line, and by branch if any, of a file to its accumulator. The file hits value is either
+     * an array with hits by line (legacy format) or an object with `lines` and `branches` (SimpleCov 0.18+).
+     *
+     * @param reader the reader positioned on the file hits value
+     * @param lineHits the hits accumulator of the file
+     * @throws IOException when couldn't read a file with coverage report
+     */
+    private void readLineHits(JsonReader reader, LineHits lineHits) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            readLines(reader, lineHits);
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("lines".equals(name)) {
+                readLines(reader, lineHits);
+            } else if ("branches".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readBranches(reader, lineHits);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Adds the hits by line of a file to its accumulator
+     *
+     * @param reader the reader positioned on an array with hits by line
+     * @param lineHits the hits accumulator of the file
+     * @throws IOException when couldn't read a file with coverage report
+     */
+    private void readLines(JsonReader reader, LineHits lineHits) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        int lineNumber = 1;
+        while (reader.hasNext()) {
+            // `null` marks a line which is not relevant for coverage
+            if (reader.peek() == JsonToken.NUMBER) {
+                lineHits.add(lineNumber, nextHits(reader));
+            } else {
+                reader.skipValue();
+            }
+            lineNumber++;
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Adds the hits by branch of a file to its accumulator. Conditions and branches are keyed by their
+     * description, e.g. `[:if, 0, 3, 4, 3, 21]` holding `{"[:then, 1, 3, 4, 3, 10]": 1, "[:else, 2, ...]": 0}`,
+     * where the second value is the id and the third one is the start line.
      *
-     * @param coverageMapEntry a map entry where value is a json object with an information about particular test suite
-     * @return an information about test suite as a data object
+     * @param reader the reader positioned on the object with conditions
+     * @param lineHits the hits accumulator of the file
+     * @throws IOException when couldn't read a file with coverage report
      */
-    private Reporter buildReporter(Map.Entry coverageMapEntry) {
-        // A key of a given map entry is a suite's name
-        String reporterName = coverageMapEntry.getKey().toString();
-        Reporter reporter = new Reporter(reporterName);
-        // A value contains an information about what files are contained in this test suite and hits information per file
-        JsonObject coverageJsonObj = ((JsonObject)coverageMapEntry.getValue()).get("coverage").getAsJsonObject();
-        // Iterate through all files in the suite
-        for(Map.Entry reportItemMapEntry : coverageJsonObj.entrySet()) {
-            reporter.addItem(buildReporterItem(reportItemMapEntry));
+    private void readBranches(JsonReader reader, LineHits lineHits) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int conditionLine = branchKeyValue(reader.nextName(), 2);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int branchId = branchKeyValue(reader.nextName(), 1);
+                if (reader.peek() == JsonToken.NUMBER) {
+                    lineHits.addBranch(branchId, conditionLine, nextHits(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a number of hits, clamped to the range of an int so that a large count never wraps to a negative one
+     *
+     * @param reader the reader positioned on a number
+     * @return the number of hits
+     * @throws IOException when couldn't read a file with coverage report
+     */
+    private static int nextHits(JsonReader reader) throws IOException {
+        return (int) Math.min(Math.max(reader.nextLong(), 0), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a numeric value of a condition or branch key, e.g. the id or the start line of `[:then, 1, 3, 4, 3, 10]`
+     *
+     * @param key the condition or branch key
+     * @param index the index of the value in the key
+     * @return the value or -1 if the key has no such numeric value
+     */
+    private static int branchKeyValue(String key, int index) {
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start = key.indexOf(',', start) + 1;
+            if (start == 0) {
+                return -1;
+            }
+        }
+        int end = key.indexOf(',', start);
+        String value = (end < 0 ? key.substring(start, key.length() - 1) : key.substring(start, end)).trim();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
         }
-        return reporter;
     }
 
     /**
      * Builds data object for a particular file in a test suite
      *
-     * @param reporterItemMapEntry a map entry where a key is a filename and value is an array with hits by line information
+     * @param filename a name of the covered file
+     * @param reader the reader positioned on the file hits value, an array with hits by line or an object with them as `lines`
      * @return an information about a file as a data object
+     * @throws IOException when couldn't read a file with coverage report
      */
-    private ReporterItem buildReporterItem(Map.Entry reporterItemMapEntry) {
-        // A key of a given map entry is file name
-        String filename = reporterItemMapEntry.getKey().toString();
-        // A value is an array with hits information
-        JsonArray marksJsonArr = ((JsonArray)reporterItemMapEntry.getValue());
-        Collection<Mark> marks = new ArrayList<>();
-        // Iterate through the all hits
-        for(JsonElement marksEl : marksJsonArr) {
-            marks.add(new Mark(marksEl.toString(), marksEl.isJsonNull()));
+    private ReporterItem buildReporterItem(String filename, JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            // SimpleCov 0.18+ format, only the hits by line are kept
+            ReporterItem reporterItem = new ReporterItem(filename);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("lines".equals(reader.nextName())) {
+                    reporterItem = buildReporterItem(filename, reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return reporterItem;
+        }
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return new ReporterItem(filename);
+        }
+        int[] hits = new int[64];
+        int size = 0;
+        reader.beginArray();
+        // Iterate through the all hits, keeping them as primitives
+        while (reader.hasNext()) {
+            if (size == hits.length) {
+                hits = Arrays.copyOf(hits, size * 2);
+            }
+            if (reader.peek() == JsonToken.NUMBER) {
+                hits[size++] = nextHits(reader);
+            } else {
+                reader.skipValue();
+                hits[size++] = ReporterItem.NULL_HITS;
+            }
         }
-        return new ReporterItem(filename, marks);
+        reader.endArray();
+        return new ReporterItem(filename, hits, size);
     }
 }
@@ -1,6 +1,6 @@
 package com.godaddy.sonar.ruby.simplecovrcov;
 
-import java.util.List;
+import java.util.Set;
 
 /**
  * Created by sergio on 3/27/17.
@@ -23,9 +23,9 @@ public interface CoverageSettings {
      *
      * The property value should be comma-delimited string.
      *
-     * If all suites are selected then this method will return an empty list.
+     * If all suites are selected then this method will return an empty set.
      *
-     * @return a list of suites names or empty list
+     * @return a set of suites names or empty set
      */
-    List<String> configuredSuitesNames();
+    Set<String> configuredSuitesNames();
 }
@@ -1,11 +1,13 @@
 package com.godaddy.sonar.ruby.simplecovrcov;
 
 import com.godaddy.sonar.ruby.RubyPlugin;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang.StringUtils;
 import org.sonar.api.ExtensionPoint;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.config.Settings;
 
-import java.util.*;
+import java.util.Set;
 
 /**
  * Provides a wrapper around SonarQube settings.
@@ -50,13 +52,13 @@ public class DefaultCoverageSettings implements CoverageSettings {
      *
      * The property value should be comma-delimited string.
      *
-     * If all suites are selected then this method will return an empty list.
+     * If all suites are selected then this method will return an empty set.
      *
-     * @return a list of suites names or empty list
+     * @return a set of suites names or empty set
      */
-    public List<String> configuredSuitesNames() {
-        if (this.processAllSuites()) { return Collections.emptyList(); }
-        return Arrays.asList(fetchCoverageTestSuitesProperty().split(","));
+    public Set<String> configuredSuitesNames() {
+        if (this.processAllSuites()) { return ImmutableSet.of(); }
+        return ImmutableSet.copyOf(StringUtils.stripAll(fetchCoverageTestSuitesProperty().split(",")));
     }
 
     private String fetchCoverageTestSuitesProperty() {
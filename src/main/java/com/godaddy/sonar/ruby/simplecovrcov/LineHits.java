@@ -0,0 +1,154 @@
+package com.godaddy.sonar.ruby.simplecovrcov;
+
+import org.sonar.api.measures.CoverageMeasuresBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the hits by line of one file across all of the processed test suites.
+ *
+ * Hits are summed into a growable primitive array indexed by line number, lines never
+ * reported as relevant (`null` in the report) are kept apart from lines reported with 0 hits.
+ * The {@link CoverageMeasuresBuilder} is only built once, when all of the suites were processed.
+ *
+ * Branch hits (SimpleCov 0.18+) are summed the same way into primitive arrays indexed by the branch id,
+ * along with the line of their condition, and are only allocated for the files having branches.
+ */
+public class LineHits {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NOT_RELEVANT = -1;
+
+    private int[] hits = newHits(INITIAL_CAPACITY);
+    private int lastLine = 0;
+
+    // the line of the condition of each branch id, 0 for the unused ids
+    private int[] branchLines = null;
+    private int[] branchHits = null;
+    private int lastBranch = -1;
+
+    /**
+     * Adds hits to a given line
+     *
+     * @param lineNumber an index of a line in the file, starting at 1
+     * @param hitsCount a hits count value for the line
+     */
+    public void add(int lineNumber, int hitsCount) {
+        if (lineNumber >= hits.length) {
+            grow(lineNumber);
+        }
+        int oldHits = hits[lineNumber] == NOT_RELEVANT ? 0 : hits[lineNumber];
+        long newHits = (long) oldHits + Math.max(hitsCount, 0);
+        hits[lineNumber] = (int) Math.min(newHits, Integer.MAX_VALUE);
+        lastLine = Math.max(lastLine, lineNumber);
+    }
+
+    /**
+     * Adds hits to a given branch of a condition
+     *
+     * @param branchId the id of the branch in the file, as reported by SimpleCov
+     * @param lineNumber an index of the line of the branch condition, starting at 1
+     * @param hitsCount a hits count value for the branch
+     */
+    public void addBranch(int branchId, int lineNumber, int hitsCount) {
+        if (branchId < 0 || lineNumber < 1) {
+            return;
+        }
+        if (branchLines == null || branchId >= branchLines.length) {
+            growBranches(branchId);
+        }
+        branchLines[branchId] = lineNumber;
+        long newHits = (long) branchHits[branchId] + Math.max(hitsCount, 0);
+        branchHits[branchId] = (int) Math.min(newHits, Integer.MAX_VALUE);
+        lastBranch = Math.max(lastBranch, branchId);
+    }
+
+    /**
+     * Adds the hits of every relevant line and branch of another accumulator of the same file
+     *
+     * @param other the hits accumulator to add, e.g. the one of another report
+     */
+    public void addAll(LineHits other) {
+        for (int lineNumber = 1; lineNumber <= other.lastLine; lineNumber++) {
+            if (other.hits[lineNumber] != NOT_RELEVANT) {
+                add(lineNumber, other.hits[lineNumber]);
+            }
+        }
+        for (int branchId = 0; branchId <= other.lastBranch; branchId++) {
+            if (other.branchLines[branchId] != 0) {
+                addBranch(branchId, other.branchLines[branchId], other.branchHits[branchId]);
+            }
+        }
+    }
+
+    /**
+     * Gives the summed hits of a given line
+     *
+     * @param lineNumber an index of a line in the file, starting at 1
+     * @return the hits count or -1 if the line was never reported as relevant
+     */
+    public int get(int lineNumber) {
+        return lineNumber < hits.length ? hits[lineNumber] : NOT_RELEVANT;
+    }
+
+    /**
+     * Builds the coverage information of the file for SonarQube
+     *
+     * @return a new coverage builder filled with the summed hits by line
+     */
+    public CoverageMeasuresBuilder toCoverageMeasuresBuilder() {
+        CoverageMeasuresBuilder fileCoverage = CoverageMeasuresBuilder.create();
+        for (int lineNumber = 1; lineNumber <= lastLine; lineNumber++) {
+            if (hits[lineNumber] != NOT_RELEVANT) {
+                fileCoverage.setHits(lineNumber, hits[lineNumber]);
+            }
+        }
+        if (lastBranch >= 0) {
+            setConditions(fileCoverage);
+        }
+        return fileCoverage;
+    }
+
+    /**
+     * Counts the branches and the covered ones of every condition line
+     */
+    private void setConditions(CoverageMeasuresBuilder fileCoverage) {
+        int lastConditionLine = 0;
+        for (int branchId = 0; branchId <= lastBranch; branchId++) {
+            lastConditionLine = Math.max(lastConditionLine, branchLines[branchId]);
+        }
+        int[] conditions = new int[lastConditionLine + 1];
+        int[] coveredConditions = new int[lastConditionLine + 1];
+        for (int branchId = 0; branchId <= lastBranch; branchId++) {
+            if (branchLines[branchId] != 0) {
+                conditions[branchLines[branchId]]++;
+                if (branchHits[branchId] > 0) {
+                    coveredConditions[branchLines[branchId]]++;
+                }
+            }
+        }
+        for (int lineNumber = 1; lineNumber <= lastConditionLine; lineNumber++) {
+            if (conditions[lineNumber] > 0) {
+                fileCoverage.setConditions(lineNumber, conditions[lineNumber], coveredConditions[lineNumber]);
+            }
+        }
+    }
+
+    private void grow(int lineNumber) {
+        int capacity = Math.max(hits.length * 2, lineNumber + 1);
+        int[] grown = newHits(capacity);
+        System.arraycopy(hits, 0, grown, 0, hits.length);
+        hits = grown;
+    }
+
+    private void growBranches(int branchId) {
+        int capacity = Math.max(branchLines == null ? 8 : branchLines.length * 2, branchId + 1);
+        branchLines = branchLines == null ? new int[capacity] : Arrays.copyOf(branchLines, capacity);
+        branchHits = branchHits == null ? new int[capacity] : Arrays.copyOf(branchHits, capacity);
+    }
+
+    private static int[] newHits(int capacity) {
+        int[] hits = new int[capacity];
+        Arrays.fill(hits, NOT_RELEVANT);
+        return hits;
+    }
+}
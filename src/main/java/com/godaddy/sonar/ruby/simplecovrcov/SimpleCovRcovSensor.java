@@ -2,6 +2,7 @@ package com.godaddy.sonar.ruby.simplecovrcov;
 
 import com.godaddy.sonar.ruby.RubyPlugin;
 import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.FileSystem;
@@ -16,8 +17,17 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
 import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class SimpleCovRcovSensor implements Sensor {
     private static final Logger LOG = Loggers.get(SimpleCovRcovSensor.class);
@@ -29,6 +39,7 @@ public class SimpleCovRcovSensor implements Sensor {
     private PathResolver pathResolver;
 
     private String reportPath = "coverage/.resultset.json";
+    private String[] pathPrefixes;
 
     /**
      * Use of IoC to get Settings
@@ -46,6 +57,7 @@ public class SimpleCovRcovSensor implements Sensor {
         if (null != reportpath_prop) {
             this.reportPath = reportpath_prop;
         }
+        this.pathPrefixes = settings.getStringArray(RubyPlugin.SIMPLECOVRCOV_PATH_PREFIXES_PROPERTY);
     }
 
     public boolean shouldExecuteOnProject(Project project) {
@@ -55,10 +67,9 @@ public class SimpleCovRcovSensor implements Sensor {
     }
 
     public void analyse(Project project, SensorContext context) {
-        File report = pathResolver.relativeFile(fs.baseDir(), reportPath);
-        LOG.info("Calling analyse for report results: " + report.getPath());
-        if (!report.isFile()) {
-            LOG.warn("SimpleCovRcov report not found at {}", report);
+        File baseDir = fs.baseDir();
+        List<File> reports = findReports(baseDir);
+        if (reports.isEmpty()) {
             return;
         }
         // printReportFile(fileName);
@@ -67,12 +78,74 @@ public class SimpleCovRcovSensor implements Sensor {
 
         try {
             LOG.info("Calling Calculate Metrics");
-            calculateMetrics(sourceFiles, report, context);
+            calculateMetrics(sourceFiles, baseDir, reports, context);
         } catch (IOException e) {
             LOG.error("unable to calculate Metrics:", e);
         }
     }
 
+    /**
+     * Finds the coverage reports to analyze. The report path is a comma delimited list of paths, which can be glob
+     * patterns (e.g. `coverage/shard-*.json`) matching the reports of parallel test runs.
+     *
+     * @param baseDir the project base directory, the paths are relative to
+     * @return the existing report files, in the configured order
+     */
+    List<File> findReports(File baseDir) {
+        Set<File> reports = new LinkedHashSet<>();
+        for (String path : StringUtils.split(reportPath, ',')) {
+            String trimmedPath = path.trim();
+            if (isGlob(trimmedPath)) {
+                List<File> matchingReports = findMatchingReports(baseDir, trimmedPath);
+                LOG.info("Calling analyse for " + matchingReports.size() + " report results matching: " + trimmedPath);
+                reports.addAll(matchingReports);
+                continue;
+            }
+            File report = pathResolver.relativeFile(baseDir, trimmedPath);
+            LOG.info("Calling analyse for report results: " + report.getPath());
+            if (report.isFile()) {
+                reports.add(report);
+            } else {
+                LOG.warn("SimpleCovRcov report not found at {}", report);
+            }
+        }
+        return new ArrayList<>(reports);
+    }
+
+    private static boolean isGlob(String path) {
+        return StringUtils.containsAny(path, "*?[{");
+    }
+
+    /**
+     * Lists the files matching a glob pattern, walking the directory tree from its last literal directory only
+     */
+    private List<File> findMatchingReports(File baseDir, String pattern) {
+        String[] segments = StringUtils.split(pattern.replace('\\', '/'), '/');
+        int firstGlob = 0;
+        while (!isGlob(segments[firstGlob])) {
+            firstGlob++;
+        }
+        String root = StringUtils.join(segments, '/', 0, firstGlob);
+        String rest = StringUtils.join(segments, '/', firstGlob, segments.length);
+        File rootDir = pattern.startsWith("/") ? new File("/" + root) : pathResolver.relativeFile(baseDir, root);
+        if (!rootDir.isDirectory()) {
+            LOG.warn("SimpleCovRcov reports directory not found at {}", rootDir);
+            return new ArrayList<>();
+        }
+
+        Path rootPath = rootDir.toPath();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+        try (Stream<Path> paths = Files.walk(rootPath)) {
+            return paths.filter(p -> Files.isRegularFile(p) && matcher.matches(rootPath.relativize(p)))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            LOG.error("Unable to list the SimpleCovRcov reports matching " + pattern, e);
+            return new ArrayList<>();
+        }
+    }
+
     private void printReportFile(String fileName) {
         File jsonFile2 = new File(fileName);
 
@@ -96,19 +169,20 @@ public class SimpleCovRcovSensor implements Sensor {
         }
     }
 
-    private void calculateMetrics(List<InputFile> sourceFiles, File jsonFile, final SensorContext context) throws IOException {
-        LOG.debug(jsonFile.toString());
-        Map<String, CoverageMeasuresBuilder> jsonResults = coverageReportFileAnalyzer.analyze(jsonFile);
+    private void calculateMetrics(List<InputFile> sourceFiles, File baseDir, List<File> jsonFiles, final SensorContext context) throws IOException {
+        LOG.debug(jsonFiles.toString());
+        Map<String, CoverageMeasuresBuilder> jsonResults = coverageReportFileAnalyzer.analyze(jsonFiles);
 
         LOG.trace("jsonResults: " + jsonResults);
+        // Index the report once, so that every source file is matched in constant time
+        CoverageIndex coverageIndex = new CoverageIndex(jsonResults, baseDir, pathPrefixes);
         File sourceFile = null;
         for (InputFile inputFile : sourceFiles) {
             try {
                 LOG.debug("SimpleCovRcovSensor processing file: " + inputFile.relativePath());
 
                 sourceFile = inputFile.file();
-                String jsonKey = inputFile.absolutePath();
-                CoverageMeasuresBuilder fileCoverage = jsonResults.get(jsonKey);
+                CoverageMeasuresBuilder fileCoverage = coverageIndex.get(inputFile);
 
                 if (fileCoverage != null) {
                     for (Measure measure : fileCoverage.createMeasures()) {
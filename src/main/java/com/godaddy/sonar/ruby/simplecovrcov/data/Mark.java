@@ -2,25 +2,53 @@ package com.godaddy.sonar.ruby.simplecovrcov.data;
 
 /**
  * Created by sergio on 2/8/17.
+ *
+ * A lightweight view of one line of a {@link ReporterItem}, the items keep their hits as primitives.
  */
 public class Mark {
     private String rawValue;
-    private Boolean isNull;
+    private long hits;
+    private boolean isNull;
 
     public Mark(String rawValue, Boolean isNull) {
         this.rawValue = rawValue;
         this.isNull = isNull;
     }
 
+    public Mark(long hits, boolean isNull) {
+        this.hits = hits;
+        this.isNull = isNull;
+    }
+
     public String getRawValue() {
-        return rawValue;
+        if (rawValue != null) {
+            return rawValue;
+        }
+        return isNull ? "null" : Long.toString(hits);
     }
 
     public Long getAsLong() {
-        return Long.parseLong(this.rawValue);
+        return rawValue != null ? Long.parseLong(rawValue) : hits;
     }
 
     public Boolean getIsNull() {
         return isNull;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Mark)) {
+            return false;
+        }
+        Mark mark = (Mark) o;
+        return isNull == mark.isNull && getRawValue().equals(mark.getRawValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Boolean.hashCode(isNull) + getRawValue().hashCode();
+    }
 }
@@ -1,22 +1,46 @@
 package com.godaddy.sonar.ruby.simplecovrcov.data;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collection;
 
 /**
  * Created by sergio on 2/8/17.
+ *
+ * The hits by line of a file are kept in a primitive array, where {@link #NULL_HITS} marks
+ * a line which is not relevant for coverage. {@link Mark} objects are only created on demand.
  */
 public class ReporterItem {
+    public static final int NULL_HITS = -1;
+
+    private static final int[] NO_HITS = new int[0];
+
     private String filename;
-    private Collection<Mark> marks;
+    private int[] hits;
+    private int size;
 
     public ReporterItem(String filename) {
-        new ReporterItem(filename, new ArrayList<>());
+        this(filename, NO_HITS, 0);
     }
 
     public ReporterItem(String filename, Collection<Mark> marks) {
         this.filename = filename;
-        this.marks = marks;
+        this.hits = new int[marks.size()];
+        for (Mark mark : marks) {
+            this.hits[size++] = toHits(mark);
+        }
+    }
+
+    /**
+     * Instantiates a reporter item over hits by line, taking ownership of the array
+     *
+     * @param filename a name of the covered file
+     * @param hits the hits by line, starting from the first line, {@link #NULL_HITS} for not relevant lines
+     * @param size the number of lines in the hits array
+     */
+    public ReporterItem(String filename, int[] hits, int size) {
+        this.filename = filename;
+        this.hits = hits;
+        this.size = size;
     }
 
     public String getFilename() {
@@ -28,6 +52,51 @@ public class ReporterItem {
     }
 
     public Collection<Mark> getMarks() {
-        return marks;
+        return new AbstractList<Mark>() {
+            @Override
+            public Mark get(int index) {
+                if (index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return hits[index] == NULL_HITS ? new Mark(0, true) : new Mark(hits[index], false);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return the number of lines of the file
+     */
+    public int getLinesCount() {
+        return size;
+    }
+
+    /**
+     * Gives the hits of a line without creating a mark
+     *
+     * @param index an index of the line, starting at 0 for the first line
+     * @return the hits count or {@link #NULL_HITS} for a not relevant line
+     */
+    public int getHits(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return hits[index];
+    }
+
+    private static int toHits(Mark mark) {
+        if (mark.getIsNull()) {
+            return NULL_HITS;
+        }
+        try {
+            return (int) Math.min(Math.max(mark.getAsLong(), 0), Integer.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            // values such as "ignored" are not hits counts
+            return NULL_HITS;
+        }
     }
 }
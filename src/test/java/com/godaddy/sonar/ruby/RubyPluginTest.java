@@ -1,8 +1,11 @@
 package com.godaddy.sonar.ruby;
 
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.Ruby;
+import com.godaddy.sonar.ruby.core.RubyFileCatalog;
 import com.godaddy.sonar.ruby.core.RubySourceCodeColorizer;
 import com.godaddy.sonar.ruby.core.profiles.SonarWayProfile;
+import com.godaddy.sonar.ruby.duplications.RubyCPDMapping;
 import com.godaddy.sonar.ruby.metricfu.*;
 import com.godaddy.sonar.ruby.simplecovrcov.CoverageReportFileAnalyzerImpl;
 import com.godaddy.sonar.ruby.simplecovrcov.SimpleCovRcovSensor;
@@ -16,7 +19,6 @@ public class RubyPluginTest {
 
     @Test
     public void testGetExtensions() {
-        // FIXME add back code duplication metrics once it's fixed
         RubyPlugin plugin = new RubyPlugin();
         List<Object> extensions = plugin.getExtensions();
         assertTrue(extensions.size() > 0);
@@ -25,9 +27,12 @@ public class RubyPluginTest {
         assertTrue(extensions.contains(CoverageReportFileAnalyzerImpl.class));
         assertTrue(extensions.contains(RubySourceCodeColorizer.class));
         assertTrue(extensions.contains(RubySensor.class));
+        assertTrue(extensions.contains(RubyFileCatalog.class));
+        assertTrue(extensions.contains(FileFingerprintStore.class));
         assertTrue(extensions.contains(MetricfuComplexitySensor.class));
         assertTrue(extensions.contains(SonarWayProfile.class));
-        // assertTrue(extensions.contains(MetricfuDuplicationSensor.class));
+        assertTrue(extensions.contains(RubyCPDMapping.class));
+        assertTrue(extensions.contains(MetricfuDuplicationSensor.class));
         assertTrue(extensions.contains(MetricfuIssueSensor.class));
         assertTrue(extensions.contains(CaneRulesDefinition.class));
         assertTrue(extensions.contains(ReekRulesDefinition.class));
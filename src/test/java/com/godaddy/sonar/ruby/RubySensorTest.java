@@ -1,16 +1,22 @@
 package com.godaddy.sonar.ruby;
 
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.LanguageRuby;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.FilePredicate;
 import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.Measure;
@@ -21,16 +27,21 @@ import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class RubySensorTest {
     public static String INPUT_SOURCE_DIR = "src/test/resources/test-data";
     public static String INPUT_SOURCE_FILE = "src/test/resources/test-data/hello_world.rb";
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private IMocksControl mocksControl;
     private SensorContext sensorContext;
     private Project project;
@@ -41,6 +52,7 @@ public class RubySensorTest {
     private FileSystem fs;
     private FilePredicates filePredicates;
     private FilePredicate filePredicate;
+    private FileFingerprintStore fingerprintStore;
 
     @Before
     public void setUp() throws Exception {
@@ -51,6 +63,7 @@ public class RubySensorTest {
 
         project = new Project("test project");
         settings = new Settings();
+        fingerprintStore = new FileFingerprintStore(new DefaultFileSystem(new File(INPUT_SOURCE_DIR)));
         project.setLanguage(LanguageRuby.INSTANCE);
 
         sensorContext = mocksControl.createMock(SensorContext.class);
@@ -68,13 +81,13 @@ public class RubySensorTest {
 
     @Test
     public void testRubySensor() {
-        RubySensor sensor = new RubySensor(settings, fs);
+        RubySensor sensor = new RubySensor(settings, fs, fingerprintStore);
         assertNotNull(sensor);
     }
 
     @Test
     public void testShouldExecuteOnProject() {
-        RubySensor sensor = new RubySensor(settings, fs);
+        RubySensor sensor = new RubySensor(settings, fs, fingerprintStore);
 
         expect(fs.predicates()).andReturn(filePredicates).times(1);
         expect(fs.hasFiles(isA(FilePredicate.class))).andReturn(true).times(1);
@@ -88,7 +101,7 @@ public class RubySensorTest {
 
     @Test
     public void testAnalyse() {
-        RubySensor sensor = new RubySensor(settings, fs);
+        RubySensor sensor = new RubySensor(settings, fs, fingerprintStore);
 
         Measure measure = new Measure();
         List<InputFile> inputFiles = new ArrayList<InputFile>();
@@ -110,9 +123,75 @@ public class RubySensorTest {
         mocksControl.verify();
     }
 
+    @Test
+    public void testAnalyseInParallel() {
+        List<InputFile> inputFiles = new ArrayList<InputFile>();
+        for (String path : new String[]{INPUT_SOURCE_FILE,
+                INPUT_SOURCE_DIR + "/app/controllers/about_controller.rb",
+                INPUT_SOURCE_DIR + "/app/controllers/api/v2/hosts_controller.rb",
+                INPUT_SOURCE_DIR + "/app/models/setting/auth.rb"}) {
+            DefaultInputFile inputFile = new DefaultInputFile(project.getKey(), path);
+            inputFile.setModuleBaseDir(FileSystems.getDefault().getPath("."));
+            inputFiles.add(inputFile);
+        }
+
+        List<Double> sequentialMeasures = analyseAndCaptureMeasures(new Settings(), inputFiles, fingerprintStore);
+        Settings parallelSettings = new Settings();
+        parallelSettings.setProperty(RubyPlugin.BASE_METRICS_THREADS_PROPERTY, "4");
+        List<Double> parallelMeasures = analyseAndCaptureMeasures(parallelSettings, inputFiles, fingerprintStore);
+
+        assertEquals(4 * inputFiles.size(), parallelMeasures.size());
+        assertEquals(sequentialMeasures, parallelMeasures);
+    }
+
+    @Test
+    public void testAnalyseReusesStoredMetrics() throws Exception {
+        List<InputFile> inputFiles = new ArrayList<InputFile>();
+        DefaultInputFile inputFile = new DefaultInputFile(project.getKey(), INPUT_SOURCE_FILE);
+        inputFile.setModuleBaseDir(FileSystems.getDefault().getPath("."));
+        inputFiles.add(inputFile);
+        DefaultFileSystem storeFileSystem = new DefaultFileSystem(new File(INPUT_SOURCE_DIR));
+        storeFileSystem.setWorkDir(temporaryFolder.newFolder());
+
+        // the next analyses reuse the stored metrics of the unchanged file
+        List<Double> measures = analyseAndCaptureMeasures(new Settings(), inputFiles, new FileFingerprintStore(storeFileSystem));
+        Settings parallelSettings = new Settings();
+        parallelSettings.setProperty(RubyPlugin.BASE_METRICS_THREADS_PROPERTY, "4");
+        assertEquals(measures, analyseAndCaptureMeasures(new Settings(), inputFiles, new FileFingerprintStore(storeFileSystem)));
+        assertEquals(measures, analyseAndCaptureMeasures(parallelSettings, inputFiles, new FileFingerprintStore(storeFileSystem)));
+        assertEquals(Arrays.asList(13.0, 4.0, 1.0, 1.0), measures);
+    }
+
+    private List<Double> analyseAndCaptureMeasures(Settings sensorSettings, List<InputFile> inputFiles,
+                                                   FileFingerprintStore store) {
+        IMocksControl control = EasyMock.createControl();
+        FileSystem fileSystem = control.createMock(FileSystem.class);
+        FilePredicates predicates = control.createMock(FilePredicates.class);
+        SensorContext context = control.createMock(SensorContext.class);
+        Capture<InputFile> savedFiles = newCapture(CaptureType.ALL);
+        Capture<Double> savedValues = newCapture(CaptureType.ALL);
+
+        expect(context.saveMeasure(capture(savedFiles), isA(Metric.class), capture(savedValues)))
+                .andReturn(new Measure()).times(4 * inputFiles.size());
+        expect(fileSystem.predicates()).andReturn(predicates).times(1);
+        expect(predicates.hasLanguage(eq("ruby"))).andReturn(filePredicate).times(1);
+        expect(fileSystem.inputFiles(isA(FilePredicate.class))).andReturn(inputFiles).times(1);
+        expect(fileSystem.encoding()).andReturn(StandardCharsets.UTF_8).times(1);
+        control.replay();
+
+        new RubySensor(sensorSettings, fileSystem, store).analyse(project, context);
+        control.verify();
+
+        // the measures are saved in the input files order
+        for (int i = 0; i < savedFiles.getValues().size(); i++) {
+            assertSame(inputFiles.get(i / 4), savedFiles.getValues().get(i));
+        }
+        return savedValues.getValues();
+    }
+
     @Test
     public void testToString() {
-        RubySensor sensor = new RubySensor(settings, fs);
+        RubySensor sensor = new RubySensor(settings, fs, fingerprintStore);
         String result = sensor.toString();
         assertEquals("RubySensor", result);
     }
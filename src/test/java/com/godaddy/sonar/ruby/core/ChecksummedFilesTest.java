@@ -0,0 +1,83 @@
+package com.godaddy.sonar.ruby.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChecksummedFilesTest {
+    private static final int MAGIC = 0x54455354;
+    private static final byte[] PAYLOAD = {1, 2, 3, 4, 5, 6};
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testReadsPayloadWritten() throws IOException {
+        File file = new File(temp.getRoot(), "cache/test.bin");
+        write(file);
+
+        assertArrayEquals(PAYLOAD, bytes(ChecksummedFiles.read(file, MAGIC, 1, "test file")));
+        assertArrayEquals(new byte[]{1, 2}, bytes(ChecksummedFiles.readStart(file, MAGIC, 1, 2)));
+        assertFalse(new File(file.getParentFile(), "test.bin.tmp").exists());
+    }
+
+    @Test
+    public void testIgnoresFilesOfAnotherFormat() throws IOException {
+        File file = temp.newFile();
+        write(file);
+
+        assertNull(ChecksummedFiles.read(file, MAGIC, 2, "test file"));
+        assertNull(ChecksummedFiles.read(file, MAGIC + 1, 1, "test file"));
+        assertNull(ChecksummedFiles.readStart(file, MAGIC, 2, 2));
+        assertNull(ChecksummedFiles.readStart(file, MAGIC, 1, PAYLOAD.length + 1));
+        assertNull(ChecksummedFiles.read(new File(temp.getRoot(), "missing.bin"), MAGIC, 1, "test file"));
+    }
+
+    @Test
+    public void testIgnoresCorruptedFiles() throws IOException {
+        File file = temp.newFile();
+        write(file);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(output.length() - 1);
+            output.write(0);
+        }
+        assertNull(ChecksummedFiles.read(file, MAGIC, 1, "test file"));
+
+        write(file);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(output.length() - 1);
+        }
+        assertNull(ChecksummedFiles.read(file, MAGIC, 1, "test file"));
+    }
+
+    @Test
+    public void testTrustsModificationTimeOlderThanResolution() {
+        assertTrue(ChecksummedFiles.isTrusted(10000L, 10000L + ChecksummedFiles.MODIFICATION_TIME_RESOLUTION));
+        assertFalse(ChecksummedFiles.isTrusted(10000L, 11000L));
+        assertEquals(2000L, ChecksummedFiles.MODIFICATION_TIME_RESOLUTION);
+    }
+
+    private static void write(File file) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(PAYLOAD);
+        ChecksummedFiles.write(file, MAGIC, 1, payload);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
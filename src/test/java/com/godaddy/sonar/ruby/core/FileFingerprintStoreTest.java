@@ -0,0 +1,167 @@
+package com.godaddy.sonar.ruby.core;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileFingerprintStoreTest {
+    private static final String SECTION = "base-metrics";
+    private static final String CONTEXT = "UTF-8";
+    private static final String VERSION = "1.0/2017-06-01";
+    private static final byte[] RESULT = {1, 2, 3, 4};
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private DefaultFileSystem fs;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        File baseDir = temp.newFolder("project");
+        fs = new DefaultFileSystem(baseDir);
+        fs.setWorkDir(temp.newFolder("work"));
+        file = new File(baseDir, "hello_world.rb");
+        write(file, "puts 'hello'\n", System.currentTimeMillis() - 60000L);
+    }
+
+    @Test
+    public void testReusesResultsOfUnchangedFiles() {
+        FileFingerprintStore store = new FileFingerprintStore(fs, VERSION);
+        assertNull(store.section(SECTION, CONTEXT).get(file));
+        store.section(SECTION, CONTEXT).put(file, RESULT);
+        store.save();
+
+        assertArrayEquals(RESULT, new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testDiscardsResultsOfChangedFiles() throws IOException {
+        storeResult();
+        write(file, "puts 'hello world'\n", file.lastModified());
+        assertNull(new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+
+        // a change of the same size within the modification time resolution is caught by the digest
+        write(file, "puts 'hello'\n", System.currentTimeMillis());
+        storeResult();
+        write(file, "puts 'HELLO'\n", file.lastModified());
+        assertNull(new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testReusesResultsOfTouchedFiles() throws IOException {
+        storeResult();
+        write(file, "puts 'hello'\n", file.lastModified() + 5000L);
+
+        assertArrayEquals(RESULT, new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testStoresFingerprintTakenWhileReading() throws IOException {
+        write(file, "puts 'hello'\n", System.currentTimeMillis());
+        FileFingerprintStore store = new FileFingerprintStore(fs, VERSION);
+        FileFingerprintStore.Fingerprint fingerprint = new FileFingerprintStore.Fingerprint(file);
+        fingerprint.digest().update(Files.readAllBytes(file.toPath()));
+        store.section(SECTION, CONTEXT).put(file, fingerprint, RESULT);
+        store.save();
+
+        assertArrayEquals(RESULT, new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testDiscardsResultsOfFilesChangedWhileRead() throws IOException {
+        write(file, "puts 'hello'\n", System.currentTimeMillis());
+        FileFingerprintStore store = new FileFingerprintStore(fs, VERSION);
+        FileFingerprintStore.Fingerprint fingerprint = new FileFingerprintStore.Fingerprint(file);
+
+        // the bytes read were the ones of a previous content of the same size
+        fingerprint.digest().update("puts 'HELLO'\n".getBytes(StandardCharsets.UTF_8));
+        store.section(SECTION, CONTEXT).put(file, fingerprint, RESULT);
+        store.save();
+
+        assertNull(new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testSharesDigestsAcrossSections() throws IOException {
+        write(file, "puts 'hello'\n", System.currentTimeMillis());
+        FileFingerprintStore store = new FileFingerprintStore(fs, VERSION);
+        FileFingerprintStore.Fingerprint fingerprint = new FileFingerprintStore.Fingerprint(file);
+        fingerprint.digest().update(Files.readAllBytes(file.toPath()));
+        store.section(SECTION, CONTEXT).put(file, fingerprint, RESULT);
+
+        // the other section reuses the digest of the unchanged size and modification time rather than reading the file
+        write(file, "puts 'HELLO'\n", file.lastModified());
+        store.section("complexity", CONTEXT).put(file, RESULT);
+        store.save();
+
+        assertNull(new FileFingerprintStore(fs, VERSION).section("complexity", CONTEXT).get(file));
+    }
+
+    @Test
+    public void testDiscardsResultsOfOtherVersionsAndContexts() {
+        storeResult();
+
+        assertNull(new FileFingerprintStore(fs, "1.1/2017-07-01").section(SECTION, CONTEXT).get(file));
+        assertNull(new FileFingerprintStore(fs, VERSION).section(SECTION, "ISO-8859-1").get(file));
+        assertNull(new FileFingerprintStore(fs, VERSION).section("complexity", CONTEXT).get(file));
+    }
+
+    @Test
+    public void testForgetsFilesNoLongerAnalyzed() throws IOException {
+        File other = new File(file.getParentFile(), "other.rb");
+        write(other, "puts 'other'\n", file.lastModified());
+        FileFingerprintStore store = new FileFingerprintStore(fs, VERSION);
+        store.section(SECTION, CONTEXT).put(file, RESULT);
+        store.section(SECTION, CONTEXT).put(other, RESULT);
+        store.save();
+
+        // only the file analyzed by the next analysis is kept
+        store = new FileFingerprintStore(fs, VERSION);
+        assertArrayEquals(RESULT, store.section(SECTION, CONTEXT).get(other));
+        store.stop();
+
+        assertNull(new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testIgnoresCorruptedStoreFiles() throws IOException {
+        storeResult();
+        File storeFile = new File(new File(fs.workDir(), FileFingerprintStore.CACHE_DIR), "fingerprints-" + SECTION + ".bin");
+        byte[] content = Files.readAllBytes(storeFile.toPath());
+        content[content.length - 1] ^= 1;
+        Files.write(storeFile.toPath(), content);
+
+        assertNull(new FileFingerprintStore(fs, VERSION).section(SECTION, CONTEXT).get(file));
+    }
+
+    @Test
+    public void testStoresNothingWithoutWorkDir() {
+        FileFingerprintStore store = new FileFingerprintStore(new DefaultFileSystem(file.getParentFile()), VERSION);
+        store.section(SECTION, CONTEXT).put(file, RESULT);
+        store.save();
+
+        assertNull(store.section(SECTION, CONTEXT).get(file));
+    }
+
+    private void storeResult() {
+        FileFingerprintStore store = new FileFingerprintStore(fs, VERSION);
+        store.section(SECTION, CONTEXT).put(file, RESULT);
+        store.save();
+    }
+
+    private static void write(File file, String content, long lastModified) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(lastModified);
+    }
+}
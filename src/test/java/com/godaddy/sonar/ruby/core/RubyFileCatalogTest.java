@@ -0,0 +1,83 @@
+package com.godaddy.sonar.ruby.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RubyFileCatalogTest {
+    private File moduleBaseDir = new File("src/test/resources/test-data");
+
+    private DefaultFileSystem fileSystem;
+    private RubyFileCatalog rubyFileCatalog;
+
+    @Before
+    public void setUp() {
+        fileSystem = new DefaultFileSystem(moduleBaseDir);
+        rubyFileCatalog = new RubyFileCatalog(fileSystem);
+    }
+
+    @Test
+    public void shouldListRubyFilesOnFirstRequest() {
+
+        // files added after the catalog creation are still listed
+        InputFile first = inputFile("app/models/first.rb", Ruby.KEY);
+        InputFile second = inputFile("app/models/second.rb", Ruby.KEY);
+        inputFile("app/assets/main.js", "js");
+
+        assertThat(rubyFileCatalog.isEmpty(), is(false));
+        assertThat(rubyFileCatalog.inputFiles().size(), is(equalTo(2)));
+        assertTrue(rubyFileCatalog.inputFiles().contains(first));
+        assertTrue(rubyFileCatalog.inputFiles().contains(second));
+        assertThat(rubyFileCatalog.files().size(), is(equalTo(2)));
+        assertTrue(rubyFileCatalog.files().contains(first.file()));
+    }
+
+    @Test
+    public void shouldLookupRubyFilesByPath() {
+        InputFile first = inputFile("app/models/first.rb", Ruby.KEY);
+        inputFile("app/assets/main.js", "js");
+
+        assertThat(rubyFileCatalog.inputFile("app/models/first.rb"), is(sameInstance(first)));
+        assertThat(rubyFileCatalog.inputFileByAbsolutePath(first.absolutePath()), is(sameInstance(first)));
+        assertThat(rubyFileCatalog.inputFile("app/assets/main.js"), is(nullValue()));
+        assertThat(rubyFileCatalog.inputFile("app/models/missing.rb"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldResolveResourcesOnceByPath() {
+        InputFile first = inputFile("app/models/first.rb", Ruby.KEY);
+        inputFile("app/models/second.rb", Ruby.KEY);
+        File other = new File(moduleBaseDir, "lib/tasks/other.rb");
+
+        // the resources are keyed as if resolved against every input file
+        for (File file : new File[]{first.file(), new File(moduleBaseDir, "app/models/../models/first.rb"), other}) {
+            RubyFile expected = new RubyFile(file, rubyFileCatalog.inputFiles());
+            assertThat(rubyFileCatalog.rubyFile(file).getKey(), is(equalTo(expected.getKey())));
+            assertThat(rubyFileCatalog.rubyFile(file).getName(), is(equalTo(expected.getName())));
+        }
+        assertThat(rubyFileCatalog.rubyFile(first.file()), is(sameInstance(rubyFileCatalog.rubyFile(first.file()))));
+    }
+
+    @Test
+    public void shouldBeEmptyWithoutRubyFiles() {
+        inputFile("app/assets/main.js", "js");
+        assertThat(rubyFileCatalog.isEmpty(), is(true));
+    }
+
+    private InputFile inputFile(String relativePath, String language) {
+        DefaultInputFile inputFile = new DefaultInputFile("modulekey", relativePath)
+                .setModuleBaseDir(moduleBaseDir.toPath())
+                .setLanguage(language)
+                .setType(InputFile.Type.MAIN);
+        fileSystem.add(inputFile);
+        return inputFile;
+    }
+}
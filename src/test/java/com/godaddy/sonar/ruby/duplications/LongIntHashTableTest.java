@@ -0,0 +1,34 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongIntHashTableTest {
+    @Test
+    public void testKeepsFirstValueOfKey() {
+        LongIntHashTable table = new LongIntHashTable(4);
+
+        assertEquals(-1, table.putIfAbsent(42L, 1));
+        assertEquals(1, table.putIfAbsent(42L, 2));
+        assertEquals(1, table.get(42L));
+        assertEquals(-1, table.get(43L));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testGrowsPastExpectedSize() {
+        LongIntHashTable table = new LongIntHashTable(1);
+        for (int i = 0; i < 10000; i++) {
+            // keys differing only by their high bits, or negative
+            assertEquals(-1, table.putIfAbsent((long) i << 40, i));
+            assertEquals(-1, table.putIfAbsent(-i - 1L, i));
+        }
+
+        assertEquals(20000, table.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, table.get((long) i << 40));
+            assertEquals(i, table.get(-i - 1L));
+        }
+    }
+}
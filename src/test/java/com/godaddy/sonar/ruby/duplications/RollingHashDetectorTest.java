@@ -0,0 +1,82 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RollingHashDetectorTest {
+    private static final String BLOCK = "kDEF tIDENTIFIER tLPAREN tIDENTIFIER tRPAREN tIDENTIFIER tPLUS tINTEGER kEND";
+
+    @Test
+    public void testGroupsCopiesOfSameBlock() {
+        RollingHashDetector detector = new RollingHashDetector(5, (FileFingerprintStore.Section) null);
+        addFile(detector, "tIDENTIFIER tEQL " + BLOCK, 1);
+        addFile(detector, "kCLASS tCONSTANT " + BLOCK + " kEND", 3);
+        addFile(detector, BLOCK, 10);
+
+        // the copies of the first file are extended to its end, the first and last token of the class differ
+        assertEquals(Arrays.asList("0:3:9 1:5:9 2:10:9"), detect(detector));
+    }
+
+    @Test
+    public void testIgnoresBlocksBelowMinimumTokens() {
+        RollingHashDetector detector = new RollingHashDetector(10, (FileFingerprintStore.Section) null);
+        addFile(detector, BLOCK, 1);
+        addFile(detector, BLOCK, 1);
+
+        assertEquals(Arrays.asList(), detect(detector));
+    }
+
+    @Test
+    public void testDetectsCopiesWithinFileWithoutOverlap() {
+        RollingHashDetector detector = new RollingHashDetector(4, (FileFingerprintStore.Section) null);
+        addFile(detector, "kEND", 1);
+        addFile(detector, "tINTEGER tPLUS tINTEGER tPLUS tINTEGER tPLUS tINTEGER tPLUS tINTEGER", 1);
+        addFile(detector, "", 1);
+
+        // a block never overlaps its first copy, even though the sequence repeats itself
+        assertEquals(Arrays.asList("1:1:4 1:5:4"), detect(detector));
+    }
+
+    @Test
+    public void testReportsGroupsOfDistinctBlocks() {
+        RollingHashDetector detector = new RollingHashDetector(3, (FileFingerprintStore.Section) null);
+        addFile(detector, "kIF tIDENTIFIER kTHEN kWHILE tIDENTIFIER kDO", 1);
+        addFile(detector, "kWHILE tIDENTIFIER kDO tPLUS kIF tIDENTIFIER kTHEN", 1);
+
+        assertEquals(Arrays.asList("0:1:3 1:5:3", "0:4:3 1:1:3"), detect(detector));
+    }
+
+    private static void addFile(RollingHashDetector detector, String images, int firstLine) {
+        detector.startFile();
+        int line = firstLine;
+        for (String image : images.split(" ")) {
+            if (!image.isEmpty()) {
+                detector.addToken(image, line++);
+            }
+        }
+    }
+
+    private static List<String> detect(RollingHashDetector detector) {
+        List<String> groups = new ArrayList<String>();
+        StringBuilder group = new StringBuilder();
+        detector.detect(new RollingHashDetector.BlockConsumer() {
+            @Override
+            public void block(int fileIndex, int startLine, int lines) {
+                group.append(group.length() > 0 ? " " : "").append(fileIndex).append(':').append(startLine).append(':').append(lines);
+            }
+
+            @Override
+            public void endGroup() {
+                groups.add(group.toString());
+                group.setLength(0);
+            }
+        });
+        return groups;
+    }
+}
@@ -0,0 +1,98 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import com.godaddy.sonar.ruby.RubyPlugin;
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
+import com.godaddy.sonar.ruby.core.Ruby;
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.cpd.Tokenizer;
+import net.sourceforge.pmd.cpd.Tokens;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RubyCPDMappingTest {
+    private static final String INPUT_SOURCE_DIR = "src/test/resources/test-data";
+    private static final String INPUT_SOURCE_FILE = "src/test/resources/test-data/hello_world.rb";
+    private static final String OTHER_SOURCE_FILE = "src/test/resources/test-data/app/models/setting/auth.rb";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Settings settings;
+    private DefaultFileSystem fileSystem;
+
+    @Before
+    public void setUp() throws Exception {
+        settings = new Settings();
+        settings.setProperty(RubyPlugin.DUPLICATIONS_ENGINE_PROPERTY, "CPD");
+        fileSystem = new DefaultFileSystem(new File(INPUT_SOURCE_DIR));
+        fileSystem.setWorkDir(temporaryFolder.newFolder());
+    }
+
+    @Test
+    public void testTokenizesFilesWithReusedLexer() throws IOException {
+        Tokenizer tokenizer = mapping().getTokenizer();
+        List<String> tokens = tokenize(tokenizer, INPUT_SOURCE_FILE);
+        assertTrue(tokens.size() > 10);
+
+        // the first token, class, follows two comment lines
+        assertTrue(tokens.get(0).endsWith(":3"));
+
+        // the lexer state of a file does not leak into the next files
+        tokenize(tokenizer, OTHER_SOURCE_FILE);
+        assertEquals(tokens, tokenize(mapping().getTokenizer(), INPUT_SOURCE_FILE));
+    }
+
+    @Test
+    public void testReusesStoredTokens() throws IOException {
+        FileFingerprintStore store = new FileFingerprintStore(fileSystem);
+        List<String> tokens = tokenize(new RubyCPDMapping(new Ruby(), settings, fileSystem, store).getTokenizer(), INPUT_SOURCE_FILE);
+        store.stop();
+
+        assertEquals(tokens, tokenize(mapping().getTokenizer(), INPUT_SOURCE_FILE));
+    }
+
+    @Test
+    public void testTokenizesNothingWhenFlayIsSelected() throws IOException {
+        settings.setProperty(RubyPlugin.DUPLICATIONS_ENGINE_PROPERTY, "Flay");
+        Tokens tokens = new Tokens();
+        mapping().getTokenizer().tokenize(sourceCode(INPUT_SOURCE_FILE), tokens);
+
+        assertEquals(0, tokens.size());
+    }
+
+    private RubyCPDMapping mapping() {
+        return new RubyCPDMapping(new Ruby(), settings, fileSystem, new FileFingerprintStore(fileSystem));
+    }
+
+    private static List<String> tokenize(Tokenizer tokenizer, String fileName) throws IOException {
+        Tokens tokens = new Tokens();
+        tokenizer.tokenize(sourceCode(fileName), tokens);
+
+        // the tokens of each file end with a separator
+        List<TokenEntry> entries = tokens.getTokens();
+        assertSame(TokenEntry.getEOF(), entries.get(entries.size() - 1));
+        List<String> images = new ArrayList<String>();
+        for (TokenEntry entry : entries.subList(0, entries.size() - 1)) {
+            images.add(entry.getValue() + ":" + entry.getBeginLine());
+        }
+        return images;
+    }
+
+    private static SourceCode sourceCode(String fileName) {
+        return new SourceCode(new SourceCode.FileCodeLoader(new File(fileName).getAbsoluteFile(), "utf-8"));
+    }
+}
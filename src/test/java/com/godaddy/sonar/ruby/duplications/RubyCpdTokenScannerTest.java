@@ -0,0 +1,89 @@
+package com.godaddy.sonar.ruby.duplications;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RubyCpdTokenScannerTest {
+    private static final String INPUT_SOURCE_FILE = "src/test/resources/test-data/hello_world.rb";
+    private static final String OTHER_SOURCE_FILE = "src/test/resources/test-data/app/models/setting/auth.rb";
+
+    private final RubyCpdTokenScanner scanner = new RubyCpdTokenScanner();
+
+    @Test
+    public void testNormalizesIdentifiersAndLiterals() throws IOException {
+        List<String> images = images("def total(items)\n  items.sum { |i| i.price * 1.2 } + @fee\nend\n");
+
+        assertEquals(Arrays.asList("def", "$id", "(", "$id", ")", "$id", ".", "$id", "{", "|", "$id", "|", "$id", ".",
+                "$id", "*", "$num", "}", "+", "$id", "end"), images);
+        assertEquals(images, images("def sum(values)\n  values.map { |v| v.cost * 3 } + @tax\nend\n"));
+        assertEquals(Arrays.asList("$id", "(", "$str", ",", "$str", ",", "$sym", ",", "$sym", ",", "$re", ",", "$str", ")"),
+                images("call('a', \"b #{c}\", :d, :\"e\", /f/i, %w[g h])"));
+    }
+
+    @Test
+    public void testGivesRangesOfTokensSpanningLines() throws IOException {
+        List<String> tokens = tokens("x = \"first\n  second\" # comment\ny = %i(a\n  (b))\n");
+
+        assertEquals(Arrays.asList("1:0-1:1 $id", "1:2-1:3 =", "1:4-2:9 $str", "3:0-3:1 $id", "3:2-3:3 =", "3:4-4:6 $sym"), tokens);
+    }
+
+    @Test
+    public void testSkipsCommentsHeredocBodiesAndData() throws IOException {
+        List<String> tokens = tokens("# header\n=begin\ndoc = 1\n=end\nputs <<~EOS, <<-'SQL'\n  \"body\n  EOS\n"
+                + "select 1\n  SQL\nexit\n__END__\nnot = ruby\n");
+
+        assertEquals(Arrays.asList("5:0-5:4 $id", "5:5-5:11 $str", "5:11-5:12 ,", "5:13-5:21 $str", "10:0-10:4 $id"), tokens);
+    }
+
+    @Test
+    public void testTellsOperatorsFromLiterals() throws IOException {
+        assertEquals(Arrays.asList("$id", "/", "$num", "%", "$id", "<<", "$id"), images("a / 2 % b << C"));
+        assertEquals(Arrays.asList("$id", "$re", "$id", "$str", "$id", "$str"), images("split /,/\nputs %(x)\nputs ?a"));
+        assertEquals(Arrays.asList("$id", ".", "$id", "(", "$re", ",", "$str", ")", "$id", "=", "$num"),
+                images("s.gsub(/\"/, '')\nx = 1 # ' \""));
+        assertEquals(Arrays.asList("$id", "!=", "$id", "?", "$id", ":", "$id", "::", "$id", "defined?", "$id"),
+                images("a!=b ? c : D::E\ndefined? f"));
+    }
+
+    @Test
+    public void testScansFilesWithReusedScanner() throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        scanner.scan(new File(INPUT_SOURCE_FILE), StandardCharsets.UTF_8,
+                (startLine, startLineOffset, endLine, endLineOffset, image) -> tokens.add(startLine + ":" + image));
+        assertTrue(tokens.size() > 10);
+
+        // the first token, class, follows two comment lines
+        assertEquals("3:class", tokens.get(0));
+
+        // the state of a file does not leak into the next files
+        scanner.scan(new File(OTHER_SOURCE_FILE), StandardCharsets.UTF_8, (startLine, startLineOffset, endLine, endLineOffset, image) -> {
+        });
+        List<String> rescanned = new ArrayList<String>();
+        scanner.scan(new File(INPUT_SOURCE_FILE), StandardCharsets.UTF_8,
+                (startLine, startLineOffset, endLine, endLineOffset, image) -> rescanned.add(startLine + ":" + image));
+        assertEquals(tokens, rescanned);
+    }
+
+    private List<String> images(String source) throws IOException {
+        List<String> images = new ArrayList<String>();
+        scanner.scan(new StringReader(source), (startLine, startLineOffset, endLine, endLineOffset, image) -> images.add(image));
+        return images;
+    }
+
+    private List<String> tokens(String source) throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        scanner.scan(new StringReader(source), (startLine, startLineOffset, endLine, endLineOffset, image) ->
+                tokens.add(startLine + ":" + startLineOffset + "-" + endLine + ":" + endLineOffset + " " + image));
+        return tokens;
+    }
+}
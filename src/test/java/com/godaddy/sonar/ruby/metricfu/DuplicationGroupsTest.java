@@ -0,0 +1,65 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DuplicationGroupsTest {
+    private static final String ABOUT_KEY = "project:controllers.about_controller";
+    private static final String AUTH_KEY = "project:setting.auth";
+
+    @Test
+    public void testSumsBlocksAndLinesByFile() {
+        DuplicationGroups groups = twoGroups();
+        int aboutId = groups.findFileId(ABOUT_KEY);
+        int authId = groups.findFileId(AUTH_KEY);
+
+        assertEquals(3, groups.blocks(aboutId));
+        assertEquals(14, groups.lines(aboutId));
+        assertEquals(1, groups.blocks(authId));
+        assertEquals(3, groups.lines(authId));
+        assertEquals(-1, groups.findFileId("project:models.user"));
+    }
+
+    @Test
+    public void testWritesGroupOfEachBlockOfFile() {
+        DuplicationGroups groups = twoGroups();
+
+        assertEquals("<duplications>"
+                + "<g><b r=\"" + ABOUT_KEY + "\" s=\"10\" l=\"3\"/><b r=\"" + AUTH_KEY + "\" s=\"2\" l=\"3\"/></g>"
+                + "</duplications>", groups.toXml(groups.findFileId(AUTH_KEY)));
+        assertEquals("<duplications>"
+                + "<g><b r=\"" + ABOUT_KEY + "\" s=\"10\" l=\"3\"/><b r=\"" + AUTH_KEY + "\" s=\"2\" l=\"3\"/></g>"
+                + "<g><b r=\"" + ABOUT_KEY + "\" s=\"20\" l=\"4\"/><b r=\"" + ABOUT_KEY + "\" s=\"40\" l=\"7\"/></g>"
+                + "<g><b r=\"" + ABOUT_KEY + "\" s=\"20\" l=\"4\"/><b r=\"" + ABOUT_KEY + "\" s=\"40\" l=\"7\"/></g>"
+                + "</duplications>", groups.toXml(groups.findFileId(ABOUT_KEY)));
+    }
+
+    @Test
+    public void testEscapesKeysAndGrowsRecords() {
+        DuplicationGroups groups = new DuplicationGroups();
+        int fileId = groups.fileId("project:a&b<\"c\">");
+        for (int i = 1; i <= 1000; i++) {
+            groups.addBlock(groups.fileId("project:file" + i), i, 2);
+            groups.addBlock(fileId, i, 1);
+            groups.endGroup();
+        }
+
+        assertEquals(1000, groups.blocks(fileId));
+        assertEquals(1000, groups.lines(fileId));
+        assertEquals("<duplications><g><b r=\"project:file7\" s=\"7\" l=\"2\"/>"
+                + "<b r=\"project:a&amp;b&lt;&quot;c&quot;&gt;\" s=\"7\" l=\"1\"/></g></duplications>",
+                groups.toXml(groups.findFileId("project:file7")));
+    }
+
+    private static DuplicationGroups twoGroups() {
+        DuplicationGroups groups = new DuplicationGroups();
+        groups.addBlock(groups.fileId(ABOUT_KEY), 10, 3);
+        groups.addBlock(groups.fileId(AUTH_KEY), 2, 3);
+        groups.endGroup();
+        groups.addBlock(groups.fileId(ABOUT_KEY), 20, 4);
+        groups.addBlock(groups.fileId(ABOUT_KEY), 40, 7);
+        groups.endGroup();
+        return groups;
+    }
+}
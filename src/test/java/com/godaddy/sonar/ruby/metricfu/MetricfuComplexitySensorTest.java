@@ -1,7 +1,9 @@
 package com.godaddy.sonar.ruby.metricfu;
 
 import com.godaddy.sonar.ruby.RubyPlugin;
+import com.godaddy.sonar.ruby.core.FileFingerprintStore;
 import com.godaddy.sonar.ruby.core.Ruby;
+import com.godaddy.sonar.ruby.core.RubyFileCatalog;
 import com.google.common.base.Charsets;
 import org.junit.Before;
 import org.junit.Test;
@@ -68,7 +70,8 @@ public class MetricfuComplexitySensorTest {
 
         // initialize report parser and complexity sensor with staged context and settings
         metricfuYamlParser = new MetricfuYamlParser(settings, context.fileSystem());
-        metricfuComplexitySensor = new MetricfuComplexitySensor(settings, context.fileSystem(), metricfuYamlParser);
+        metricfuComplexitySensor = new MetricfuComplexitySensor(settings, new RubyFileCatalog(context.fileSystem()), metricfuYamlParser,
+                new FileFingerprintStore(context.fileSystem()));
 
         // set logger level according to testing phase (debug is crowded..)
         logTester.setLevel(LoggerLevel.INFO);
@@ -2,6 +2,7 @@ package com.godaddy.sonar.ruby.metricfu;
 
 import com.godaddy.sonar.ruby.RubyPlugin;
 import com.godaddy.sonar.ruby.core.Ruby;
+import com.godaddy.sonar.ruby.core.RubyFileCatalog;
 import com.google.common.base.Charsets;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +17,7 @@ import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -61,7 +63,7 @@ public class MetricfuIssueSensorTest {
 
         // initialize report parser and issues sensor with staged context and settings
         metricfuYamlParser = new MetricfuYamlParser(settings, context.fileSystem());
-        metricfuIssueSensor = new MetricfuIssueSensor(context.fileSystem(), metricfuYamlParser);
+        metricfuIssueSensor = new MetricfuIssueSensor(settings, new RubyFileCatalog(context.fileSystem()), metricfuYamlParser);
 
         // set logger level according to testing phase (debug is crowded..)
         logTester.setLevel(LoggerLevel.INFO);
@@ -165,4 +167,35 @@ public class MetricfuIssueSensorTest {
         assertThat(issues.get(0).primaryLocation().message(),
                 is(equalTo("Class 'HostsController' requires explanatory comments on preceding line.")));
     }
+
+    @Test
+    public void shouldSaveSameIssuesInSameOrderWithWorkerThreads() throws Exception {
+
+        // collect the issues sequentially
+        metricfuIssueSensor.execute(context);
+        List<String> sequentialIssues = describe(context.allIssues());
+
+        // collect the issues of the same files with a worker pool
+        Settings parallelSettings = new Settings(settings);
+        parallelSettings.setProperty(RubyPlugin.METRICFU_THREADS_PROPERTY, "4");
+        SensorContextTester sequentialContext = context;
+        context = SensorContextTester.create(moduleBaseDir);
+        context.setSettings(parallelSettings);
+        for (InputFile file : sequentialContext.fileSystem().inputFiles(sequentialContext.fileSystem().predicates().all())) {
+            context.fileSystem().add((DefaultInputFile) file);
+        }
+        new MetricfuIssueSensor(parallelSettings, new RubyFileCatalog(context.fileSystem()), metricfuYamlParser).execute(context);
+
+        // verify the same issues were saved in the same order
+        assertThat(sequentialIssues.isEmpty(), is(false));
+        assertThat(describe(context.allIssues()), is(equalTo(sequentialIssues)));
+    }
+
+    private List<String> describe(Collection<Issue> issues) {
+        return issues.stream()
+                .map(issue -> issue.ruleKey() + " " + issue.primaryLocation().inputComponent().key() + " "
+                        + (issue.primaryLocation().textRange() == null ? "-" : issue.primaryLocation().textRange().start().line())
+                        + " " + issue.primaryLocation().message())
+                .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,144 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.LogTester;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MetricfuReportCacheTest {
+    private final static String YML_FILE_NAME = "metricfu_report.yml";
+    private final static String ROODI_FILE_NAME = "app/controllers/concerns/deep_link_redirector.rb";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public LogTester logTester = new LogTester();
+
+    private DefaultFileSystem fs;
+    private File report;
+
+    @Before
+    public void setUp() throws Exception {
+        File baseDir = temp.newFolder("project");
+        report = new File(baseDir, YML_FILE_NAME);
+        FileUtils.copyFile(new File("./src/test/resources/test-data/metricfu_report_backup.yml"), report);
+        fs = new DefaultFileSystem(baseDir);
+        fs.setWorkDir(temp.newFolder("work"));
+    }
+
+    @Test
+    public void shouldCacheSectionsReadFromTheReport() throws Exception {
+
+        // the first analysis reads the yaml and caches the sections
+        List<RoodiProblem> problems = new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseRoodi(ROODI_FILE_NAME);
+        assertThat(problems.size(), is(equalTo(3)));
+
+        // the cached roodi problems are equivalent to the parsed ones
+        MetricfuReport cached = new MetricfuReport();
+        assertTrue(cache().load(cached, MetricfuSection.ROODI));
+        assertThat(cached.getRoodi().get(ROODI_FILE_NAME).size(), is(equalTo(3)));
+        for (int i = 0; i < problems.size(); i++) {
+            assertThat(cached.getRoodi().get(ROODI_FILE_NAME).get(i).toString(), is(equalTo(problems.get(i).toString())));
+        }
+
+        // the next analysis returns the same results
+        List<RoodiProblem> cachedProblems = new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseRoodi(ROODI_FILE_NAME);
+        assertThat(cachedProblems.toString(), is(equalTo(problems.toString())));
+    }
+
+    @Test
+    public void shouldIgnoreCacheOfModifiedReport() throws Exception {
+        new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseFlay();
+
+        // a modified report invalidates the cached sections
+        FileUtils.write(report, "\n", "UTF-8", true);
+        assertFalse(cache().load(new MetricfuReport(), MetricfuSection.FLAY));
+    }
+
+    @Test
+    public void shouldCompareDigestOfReportModifiedWithinTimeResolution() throws Exception {
+        new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseFlay();
+
+        // a change of the same size right after the report was cached keeps its modification time
+        rewriteKeepingSizeAndModificationTime();
+        assertFalse(cache().load(new MetricfuReport(), MetricfuSection.FLAY));
+    }
+
+    @Test
+    public void shouldTrustModificationTimeOfOlderReport() throws Exception {
+        assertTrue(report.setLastModified(report.lastModified() - 10000L));
+        new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseFlay();
+
+        // the report is not digested again when any change would have modified its modification time
+        rewriteKeepingSizeAndModificationTime();
+        assertTrue(cache().load(new MetricfuReport(), MetricfuSection.FLAY));
+    }
+
+    @Test
+    public void shouldFingerprintReportWithItsDigest() throws Exception {
+        String fingerprint = cache().reportFingerprint();
+        assertThat(cache().reportFingerprint(), is(equalTo(fingerprint)));
+
+        // a report generated again with the same size and modification time has another fingerprint
+        rewriteKeepingSizeAndModificationTime();
+        assertThat(cache().reportFingerprint(), is(not(equalTo(fingerprint))));
+    }
+
+    @Test
+    public void shouldFingerprintOlderReportWithCachedDigest() throws Exception {
+        assertTrue(report.setLastModified(report.lastModified() - 10000L));
+        new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseFlay();
+        String fingerprint = cache().reportFingerprint();
+
+        // the digest stored by the cache files is reused rather than the report read again
+        rewriteKeepingSizeAndModificationTime();
+        assertThat(cache().reportFingerprint(), is(equalTo(fingerprint)));
+    }
+
+    @Test
+    public void shouldIgnoreCorruptedCache() throws Exception {
+        new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseRoodi(ROODI_FILE_NAME);
+
+        // flip the last byte of the cached payload
+        File cacheFile = cache().cacheFile(MetricfuSection.ROODI);
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+        assertFalse(cache().load(new MetricfuReport(), MetricfuSection.ROODI));
+        assertThat(logTester.logs().toString(), containsString("Ignoring corrupted metricfu cache file"));
+
+        // the report is parsed again and the cache rewritten
+        List<RoodiProblem> problems = new MetricfuYamlParser(new Settings(), fs, YML_FILE_NAME).parseRoodi(ROODI_FILE_NAME);
+        assertThat(problems.size(), is(equalTo(3)));
+        assertTrue(cache().load(new MetricfuReport(), MetricfuSection.ROODI));
+    }
+
+    private void rewriteKeepingSizeAndModificationTime() throws Exception {
+        long lastModified = report.lastModified();
+        byte[] content = FileUtils.readFileToByteArray(report);
+        content[0] = (byte) (content[0] == '#' ? ' ' : '#');
+        FileUtils.writeByteArrayToFile(report, content);
+        assertTrue(report.setLastModified(lastModified));
+    }
+
+    private MetricfuReportCache cache() {
+        return new MetricfuReportCache(fs.workDir(), report);
+    }
+}
@@ -6,22 +6,40 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
 import org.sonar.api.config.Settings;
 import org.sonar.api.internal.apachecommons.lang.reflect.FieldUtils;
 import org.sonar.api.resources.Project;
+import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.LogTester;
+import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 public class MetricfuYamlParserTest {
     private final static String YML_SYNTAX_FILE_NAME = "/metricfu_report.yml";
+    private final static String YML_BACKUP_FILE_NAME = "/metricfu_report_backup.yml";
 
     private Settings settings;
     private FileSystem fs;
@@ -53,9 +71,11 @@ public class MetricfuYamlParserTest {
         // verify results are being loaded correctly from valid file
         MetricfuYamlParser parser = new MetricfuYamlParser(settings, fs, YML_SYNTAX_FILE_NAME);
 
-        // use reflection to retrieve the private yaml results field
-        Object metricfuResult = FieldUtils.readField(parser, "metricfuResult", true);
-        assertThat(metricfuResult, is(notNullValue()));
+        // use reflection to verify the report is only read on the first request
+        assertThat(FieldUtils.readField(parser, "metricfuReport", true), is(nullValue()));
+        parser.parseFlay();
+        Object metricfuReport = FieldUtils.readField(parser, "metricfuReport", true);
+        assertThat(metricfuReport, is(notNullValue()));
     }
 
     @Test
@@ -222,4 +242,177 @@ public class MetricfuYamlParserTest {
             assertThat("expect flay reason matches to have correct number of lines", match.getLines(), is(equalTo(1)));
         }
     }
+
+    @Test
+    public void shouldReturnIndexedResultsMatchingLinearScan() throws Exception {
+
+        // load the raw report and collect every file it mentions plus an unknown one
+        Map<String, Object> report = loadRawReport(YML_BACKUP_FILE_NAME);
+        Set<String> filenames = new LinkedHashSet<>();
+        for (Map<String, Object> row : rawList(rawSection(report, ":roodi", ":problems"))) {
+            filenames.add((String) row.get(":file"));
+        }
+        for (Map<String, Object> row : rawList(rawSection(report, ":reek", ":matches"))) {
+            filenames.add((String) row.get(":file_path"));
+        }
+        for (Map<String, Object> row : rawList(rawSection(report, ":cane", ":violations", ":abc_complexity"))) {
+            filenames.add((String) row.get(":file"));
+        }
+        filenames.add("app/not/in/report.rb");
+
+        // verify the indexed lookups return exactly what a scan of the whole section returns
+        MetricfuYamlParser parser = new MetricfuYamlParser(settings, fs, YML_BACKUP_FILE_NAME);
+        for (String filename : filenames) {
+            assertEquals(filename, scanRoodi(report, filename), describe(parser.parseRoodi(filename)));
+            assertEquals(filename, scanReek(report, filename), describe(parser.parseReek(filename)));
+            assertEquals(filename, scanCaneComplexity(report, filename), describe(parser.parseCane(filename)));
+        }
+        assertThat(parser.parseRoodi("app/controllers/concerns/deep_link_redirector.rb").size(), is(equalTo(3)));
+        assertThat(parser.parseReek("app/controllers/api/base_controller.rb").size(), is(equalTo(3)));
+    }
+
+    @Test
+    public void shouldOnlyReadSectionsExpectedByEnabledSensors() throws Exception {
+
+        // use cane complexity with only reek rules enabled
+        settings.setProperty(RubyPlugin.METRICFU_COMPLEXITY_METRIC_PROPERTY, "Cane");
+        ActiveRules activeRules = new ActiveRulesBuilder()
+                .create(RuleKey.of(RubyPlugin.KEY_REPOSITORY_REEK, "TooManyStatements")).activate()
+                .build();
+        MetricfuYamlParser parser = new MetricfuYamlParser(settings, fs, activeRules, YML_BACKUP_FILE_NAME);
+
+        // the first request reads all of the expected sections at once
+        assertThat(parser.parseReek("app/controllers/api/base_controller.rb").size(), is(equalTo(3)));
+        Set<MetricfuSection> loaded = (Set<MetricfuSection>) FieldUtils.readField(parser, "loadedSections", true);
+        assertEquals(EnumSet.of(MetricfuSection.CANE, MetricfuSection.REEK), loaded);
+
+        // unexpected sections are still read on demand
+        assertThat(parser.parseRoodi("app/controllers/concerns/deep_link_redirector.rb").size(), is(equalTo(3)));
+        assertTrue(loaded.contains(MetricfuSection.ROODI));
+        assertTrue(!loaded.contains(MetricfuSection.SAIKURO));
+        assertTrue(!loaded.contains(MetricfuSection.FLAY));
+    }
+
+    @Test
+    public void shouldOnlyReadFlayForFlayDuplications() throws Exception {
+
+        // use cane complexity and flay duplications with no rules enabled
+        settings.setProperty(RubyPlugin.METRICFU_COMPLEXITY_METRIC_PROPERTY, "Cane");
+        settings.setProperty(RubyPlugin.DUPLICATIONS_ENGINE_PROPERTY, "Flay");
+        MetricfuYamlParser parser = new MetricfuYamlParser(settings, fs, new ActiveRulesBuilder().build(), YML_BACKUP_FILE_NAME);
+
+        // the flay section is read along with the complexity section
+        assertThat(parser.parseCane("lib/campaign_status_helper.rb").size(), is(equalTo(1)));
+        Set<MetricfuSection> loaded = (Set<MetricfuSection>) FieldUtils.readField(parser, "loadedSections", true);
+        assertEquals(EnumSet.of(MetricfuSection.CANE, MetricfuSection.FLAY), loaded);
+    }
+
+    @Test
+    public void shouldReturnConsistentResultsToConcurrentCallers() throws Exception {
+        final String roodiFile = "app/controllers/concerns/deep_link_redirector.rb";
+        final String reekFile = "app/controllers/api/base_controller.rb";
+
+        // compute the expected results with a dedicated parser
+        MetricfuYamlParser reference = new MetricfuYamlParser(settings, fs, YML_BACKUP_FILE_NAME);
+        final List<String> expectedRoodi = describe(reference.parseRoodi(roodiFile));
+        final List<String> expectedReek = describe(reference.parseReek(reekFile));
+
+        // hammer a fresh parser from many threads released at once
+        final MetricfuYamlParser parser = new MetricfuYamlParser(settings, fs, YML_BACKUP_FILE_NAME);
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int mismatches = 0;
+                    for (int j = 0; j < 500; j++) {
+                        if (!expectedRoodi.equals(describe(parser.parseRoodi(roodiFile)))) {
+                            mismatches++;
+                        }
+                        if (!expectedReek.equals(describe(parser.parseReek(reekFile)))) {
+                            mismatches++;
+                        }
+                    }
+                    return mismatches;
+                }));
+            }
+            start.countDown();
+
+            // verify every caller saw the complete results
+            for (Future<Integer> result : results) {
+                assertThat(result.get(30, TimeUnit.SECONDS), is(equalTo(0)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(expectedRoodi.size(), is(equalTo(3)));
+        assertThat(expectedReek.size(), is(equalTo(3)));
+    }
+
+    private Map<String, Object> loadRawReport(String filename) throws IOException {
+        try (InputStream input = new FileInputStream(new File(fs.baseDir(), filename))) {
+            return (Map<String, Object>) new Yaml().loadAs(input, Map.class);
+        }
+    }
+
+    private Object rawSection(Map<String, Object> report, String... keys) {
+        Object node = report;
+        for (String key : keys) {
+            node = node == null ? null : ((Map<String, Object>) node).get(key);
+        }
+        return node;
+    }
+
+    private List<Map<String, Object>> rawList(Object node) {
+        return node == null ? new ArrayList<>() : (List<Map<String, Object>>) node;
+    }
+
+    private List<String> describe(List<?> items) {
+        return items.stream().map(item -> item instanceof ReekSmell
+                ? item.toString() + " lines: " + ((ReekSmell) item).getLines()
+                : item.toString()).collect(Collectors.toList());
+    }
+
+    private List<String> scanRoodi(Map<String, Object> report, String filename) {
+        List<RoodiProblem> problems = new ArrayList<>();
+        for (Map<String, Object> row : rawList(rawSection(report, ":roodi", ":problems"))) {
+            if (filename.equals(row.get(":file")) && Integer.parseInt((String) row.get(":line")) > 0) {
+                problems.add(new RoodiProblem(filename, Integer.parseInt((String) row.get(":line")),
+                        (String) row.get(":problem")));
+            }
+        }
+        return describe(problems);
+    }
+
+    private List<String> scanReek(Map<String, Object> report, String filename) {
+        List<ReekSmell> smells = new ArrayList<>();
+        for (Map<String, Object> row : rawList(rawSection(report, ":reek", ":matches"))) {
+            if (filename.equals(row.get(":file_path"))) {
+                for (Map<String, Object> smellRow : rawList(row.get(":code_smells"))) {
+                    ReekSmell smell = new ReekSmell(filename, (String) smellRow.get(":method"),
+                            (String) smellRow.get(":message"), (String) smellRow.get(":type"));
+                    for (Integer line : (List<Integer>) smellRow.getOrDefault(":lines", new ArrayList<Integer>())) {
+                        smell.addLine(line);
+                    }
+                    smells.add(smell);
+                }
+                break;
+            }
+        }
+        return describe(smells);
+    }
+
+    private List<String> scanCaneComplexity(Map<String, Object> report, String filename) {
+        List<CaneViolation> violations = new ArrayList<>();
+        for (Map<String, Object> row : rawList(rawSection(report, ":cane", ":violations", ":abc_complexity"))) {
+            if (filename.equals(row.get(":file"))) {
+                violations.add(new CaneComplexityViolation(filename, (String) row.get(":method"),
+                        Integer.parseInt((String) row.get(":complexity"))));
+            }
+        }
+        return describe(violations);
+    }
 }
@@ -0,0 +1,106 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MetricfuYamlReaderTest {
+
+    private MetricfuReport read(String yaml) {
+        return new MetricfuYamlReader(new StringReader(yaml)).read();
+    }
+
+    @Test
+    public void shouldSkipUnknownSections() throws Exception {
+
+        // read a report with unused sections around a roodi section
+        MetricfuReport report = read("---\n"
+                + ":hotspots:\n"
+                + "  :files:\n"
+                + "  - :a: [1, 2, {b: c}]\n"
+                + "    :d: &anchor\n"
+                + "      e: [f]\n"
+                + ":roodi:\n"
+                + "  :problems:\n"
+                + "  - :file: lib/a.rb\n"
+                + "    :line: '3'\n"
+                + "    :problem: Don't use 'for' loops.\n"
+                + ":churn:\n"
+                + "  :changes: *anchor\n");
+
+        // verify only the roodi problem was read
+        assertThat(report.getRoodi().get("lib/a.rb").size(), is(equalTo(1)));
+        assertThat(report.getRoodi().get("lib/a.rb").get(0).getLine(), is(equalTo(3)));
+        assertThat(report.getSaikuro().isEmpty(), is(true));
+        assertThat(report.getFlay().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReadEntriesRegardlessOfKeyOrder() throws Exception {
+
+        // read a saikuro file entry whose filename comes after its classes
+        MetricfuReport report = read("---\n"
+                + ":saikuro:\n"
+                + "  :files:\n"
+                + "  - :classes:\n"
+                + "    - :methods:\n"
+                + "      - :complexity: 4\n"
+                + "        :name: A#b\n"
+                + "        :lines: 7\n"
+                + "      :class_name: A\n"
+                + "      :complexity: 4\n"
+                + "      :lines: 9\n"
+                + "    :filename: lib/a.rb\n");
+
+        // verify the classes were assigned to the file
+        SaikuroClassComplexity classComplexity = report.getSaikuro().get("lib/a.rb").get(0);
+        assertThat(classComplexity.getFile(), is(equalTo("lib/a.rb")));
+        assertThat(classComplexity.getName(), is(equalTo("A")));
+        assertThat(classComplexity.getMethods().get(0).getName(), is(equalTo("A#b")));
+        assertThat(classComplexity.getMethods().get(0).getLines(), is(equalTo(7)));
+    }
+
+    @Test
+    public void shouldGroupCaneViolationsByKind() throws Exception {
+
+        // read cane violations with the comment kind listed first
+        MetricfuReport report = read("---\n"
+                + ":cane:\n"
+                + "  :violations:\n"
+                + "    :comment:\n"
+                + "    - :line: lib/a.rb:1\n"
+                + "      :class_name: A\n"
+                + "    :abc_complexity:\n"
+                + "    - :file: lib/a.rb\n"
+                + "      :method: A#b\n"
+                + "      :complexity: '17'\n");
+
+        // verify complexity violations still come before comment violations
+        assertThat(report.getCane().get("lib/a.rb").get(0), is(instanceOf(CaneComplexityViolation.class)));
+        assertThat(report.getCane().get("lib/a.rb").get(1), is(instanceOf(CaneCommentViolation.class)));
+    }
+
+    @Test
+    public void shouldStripColorsOfRoodiProblems() throws Exception {
+
+        // read a roodi problem colored by the terminal
+        MetricfuReport report = read("---\n"
+                + ":roodi:\n"
+                + "  :problems:\n"
+                + "  - :file: \"\\e[36mlib/a.rb\\e[0m\"\n"
+                + "    :line: '3'\n"
+                + "    :problem: \"\\e[31mDon't use 'for' loops.\\e[0m\"\n");
+
+        // verify the color sequences were removed
+        RoodiProblem problem = report.getRoodi().get("lib/a.rb").get(0);
+        assertThat(problem.getProblem(), is(equalTo("Don't use 'for' loops.")));
+
+        // verify strings without color are kept, and other escape sequences are left as they are
+        String plain = "Method \"a\" has 26 lines.";
+        assertThat(MetricfuYamlReader.stripColors(plain), is(sameInstance(plain)));
+        assertThat(MetricfuYamlReader.stripColors("\u001B[1mA\u001B[0M\u001B[m\u001B[2J\u001B"), is(equalTo("A\u001B[m\u001B[2J\u001B")));
+    }
+}
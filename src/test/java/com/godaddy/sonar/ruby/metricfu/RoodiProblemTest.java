@@ -0,0 +1,40 @@
+package com.godaddy.sonar.ruby.metricfu;
+
+import com.godaddy.sonar.ruby.metricfu.RoodiProblem.RoodiCheck;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RoodiProblemTest {
+
+    @Test
+    public void testClassifiesMessagesOfEachCheck() {
+        assertEquals(RoodiCheck.AbcMetricMethodCheck, RoodiProblem.messageToKey("Method name \"save\" has an ABC metric score of <12,4,6>=14.07.  It should be 10 or less."));
+        assertEquals(RoodiCheck.AssignmentInConditionalCheck, RoodiProblem.messageToKey("Found = in conditional.  It should probably be an ==."));
+        assertEquals(RoodiCheck.CaseMissingElseCheck, RoodiProblem.messageToKey("Case statement is missing an else clause."));
+        assertEquals(RoodiCheck.ClassLineCountCheck, RoodiProblem.messageToKey("Class \"DonationPage\" has 315 lines.  It should have 300 or less."));
+        assertEquals(RoodiCheck.ClassNameCheck, RoodiProblem.messageToKey("Class name \"donation_page\" should match pattern /^[A-Z][a-zA-Z0-9]*$/"));
+        assertEquals(RoodiCheck.ClassVariableCheck, RoodiProblem.messageToKey("Don't use class variables in your code."));
+        assertEquals(RoodiCheck.ControlCouplingCheck, RoodiProblem.messageToKey("Method \"connect\" uses the argument \"force\" for internal control."));
+        assertEquals(RoodiCheck.CoreMethodOverrideCheck, RoodiProblem.messageToKey("Class overrides method 'class'."));
+        assertEquals(RoodiCheck.CyclomaticComplexityBlockCheck, RoodiProblem.messageToKey("Block cyclomatic complexity is 5.  It should be 4 or less."));
+        assertEquals(RoodiCheck.CyclomaticComplexityMethodCheck, RoodiProblem.messageToKey("Method name \"deep_link_redirect\" cyclomatic complexity is 11.  It should be 8 or less."));
+        assertEquals(RoodiCheck.EmptyRescueBodyCheck, RoodiProblem.messageToKey("Rescue block should not be empty."));
+        assertEquals(RoodiCheck.ForLoopCheck, RoodiProblem.messageToKey("Don't use 'for' loops."));
+        assertEquals(RoodiCheck.MethodLineCountCheck, RoodiProblem.messageToKey("Method \"connect\" has 26 lines.  It should have 20 or less."));
+        assertEquals(RoodiCheck.MethodNameCheck, RoodiProblem.messageToKey("Method name \"Save\" should match pattern /^[_a-z<>=\\[|+-\\/\\*`]+[_a-z0-9_<>=~@\\[\\]]*[=!\\?]?$/"));
+        assertEquals(RoodiCheck.ModuleLineCountCheck, RoodiProblem.messageToKey("Module \"Helpers\" has 320 lines.  It should have 300 or less."));
+        assertEquals(RoodiCheck.ModuleNameCheck, RoodiProblem.messageToKey("Module name \"helpers\" should match pattern /^[A-Z][a-zA-Z0-9]*$/"));
+        assertEquals(RoodiCheck.NpathComplexityMethodCheck, RoodiProblem.messageToKey("Method name \"save\" n-path complexity is 24.  It should be 16 or less."));
+        assertEquals(RoodiCheck.ParameterNumberCheck, RoodiProblem.messageToKey("Method name \"save\" has 6 parameters.  It should have 5 or less."));
+    }
+
+    @Test
+    public void testMatchesMessagesFromTheirStartIgnoringCase() {
+        assertEquals(RoodiCheck.ForLoopCheck, RoodiProblem.messageToKey("DON'T USE 'FOR' LOOPS."));
+        assertNull(RoodiProblem.messageToKey("Warning: Don't use 'for' loops."));
+        assertNull(RoodiProblem.messageToKey("Method \"connect\" has many lines."));
+        assertNull(RoodiProblem.messageToKey(""));
+    }
+}
@@ -0,0 +1,211 @@
+package com.godaddy.sonar.ruby.parsers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineMetricsScannerTest {
+    public static String INPUT_SOURCE_FILE = "src/test/resources/test-data/hello_world.rb";
+
+    private static final String CONSTRUCTS_SOURCE = "\uFEFF# encoding: utf-8\r\n"
+            + "=begin\n\u00e9t\u00eb\n=end\n"
+            + "s = \"na\u00efve # \u00fc\n# not a comment\"\n"
+            + "sql = <<~SQL\n  # body\n  SQL\n"
+            + "  # comment, \u00e7a va\n\n"
+            + "__END__\n# data\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LineMetricsScanner scanner = new LineMetricsScanner();
+
+    @Test
+    public void testScanFile() throws IOException {
+        LineMetrics lineMetrics = scanner.scan(new File(INPUT_SOURCE_FILE), StandardCharsets.UTF_8);
+
+        assertEquals(19, lineMetrics.getLines());
+        assertEquals(2, lineMetrics.getBlankLines());
+        assertEquals(4, lineMetrics.getCommentLines());
+        assertEquals(13, lineMetrics.getLinesOfCode());
+    }
+
+    @Test
+    public void testScanLineBreaks() throws IOException {
+        LineMetrics lineMetrics = scanner.scan(new StringReader("# comment\r\n\tputs 1\r\r  \n  # indented\nend"));
+
+        assertEquals(6, lineMetrics.getLines());
+        assertEquals(2, lineMetrics.getBlankLines());
+        assertEquals(2, lineMetrics.getCommentLines());
+        assertEquals(2, lineMetrics.getLinesOfCode());
+    }
+
+    @Test
+    public void testReuseScannerAcrossBuffers() throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            source.append(i % 3 == 0 ? "# comment\r\n" : "x = 1\r\n");
+        }
+        LineMetrics lineMetrics = scanner.scan(new StringReader(source.toString()));
+        assertEquals(1000, lineMetrics.getCommentLines());
+        assertEquals(2000, lineMetrics.getLinesOfCode());
+        assertEquals(3000, lineMetrics.getLines());
+
+        assertEquals(new LineMetrics(0, 0, 0, 0), scanner.scan(new StringReader("")));
+    }
+
+    @Test
+    public void testScanLastLine() throws IOException {
+        // the empty remainder after the last line break is not a line, a last line without a line break is one
+        assertEquals(new LineMetrics(2, 1, 0, 1), scanner.scan(new StringReader("puts 1\n\n")));
+        assertEquals(new LineMetrics(2, 0, 1, 1), scanner.scan(new StringReader("puts 1\r\n# end")));
+        assertEquals(new LineMetrics(2, 1, 0, 1), scanner.scan(new StringReader("puts 1\r\n  ")));
+    }
+
+    @Test
+    public void testScanLongLines() throws IOException {
+        StringBuilder source = new StringBuilder("s = '");
+        for (int i = 0; i < 100000; i++) {
+            source.append('x');
+        }
+        source.append("'\n# comment\nputs s\n");
+
+        assertEquals(new LineMetrics(3, 0, 1, 2), scanner.scan(new StringReader(source.toString())));
+        assertEquals(new LineMetrics(1, 0, 0, 1), scanner.scan(new StringReader("puts 1\n")));
+    }
+
+    @Test
+    public void testScanBlockComments() throws IOException {
+        LineMetrics lineMetrics = scanner.scan(new StringReader(
+                "=begin\nputs 'not code'\n\n=end\nputs 1\n  =begin\n"));
+
+        assertEquals(3, lineMetrics.getCommentLines());
+        assertEquals(2, lineMetrics.getLinesOfCode());
+        assertEquals(1, lineMetrics.getBlankLines());
+    }
+
+    @Test
+    public void testScanHeredocs() throws IOException {
+        LineMetrics lineMetrics = scanner.scan(new StringReader(
+                "sql = <<~SQL.strip + <<-'EOS'\n"
+                        + "  # not a comment\n"
+                        + "  SQL\n"
+                        + "#{not a comment}\n"
+                        + "  EOS\n"
+                        + "class << self\n"
+                        + "# comment\n"
+                        + "end"));
+
+        assertEquals(1, lineMetrics.getCommentLines());
+        assertEquals(7, lineMetrics.getLinesOfCode());
+    }
+
+    @Test
+    public void testScanStrings() throws IOException {
+        LineMetrics lineMetrics = scanner.scan(new StringReader(
+                "s = \"a # b\n"
+                        + "# not a comment\\\"\n"
+                        + "\" # comment after code\n"
+                        + "w = %w[a [b]\n"
+                        + "# not a comment]\n"
+                        + "]\n"
+                        + "c = ?# + '#'\n"
+                        + "  # comment\n"
+                        + "x = 5 % 2"));
+
+        assertEquals(1, lineMetrics.getCommentLines());
+        assertEquals(8, lineMetrics.getLinesOfCode());
+    }
+
+    @Test
+    public void testScanRegularExpressions() throws IOException {
+        // the quotes of a regular expression do not start a string
+        assertEquals(new LineMetrics(4, 0, 2, 2), scanner.scan(new StringReader("x = s.gsub(/\"/, '')\n# a comment\ny = 1\n# another\n")));
+
+        LineMetrics lineMetrics = scanner.scan(new StringReader(
+                "words = s.split(/'/)\n"
+                        + "words = s.split /'/ # comment after code\n"
+                        + "# comment\n"
+                        + "half = (a + b) / 2 # not a regular expression\n"
+                        + "# comment\n"
+                        + "x = 1 if s =~ /#{y}\\//\n"
+                        + "# comment"));
+
+        assertEquals(3, lineMetrics.getCommentLines());
+        assertEquals(4, lineMetrics.getLinesOfCode());
+    }
+
+    @Test
+    public void testScanDataSection() throws IOException {
+        LineMetrics lineMetrics = scanner.scan(new StringReader("puts DATA.read\n__END__\n# data\ncode\n"));
+
+        assertEquals(4, lineMetrics.getLines());
+        assertEquals(0, lineMetrics.getCommentLines());
+        assertEquals(1, lineMetrics.getLinesOfCode());
+        assertEquals(0, lineMetrics.getBlankLines());
+    }
+
+    @Test
+    public void testScanRawBytesLikeDecodedChars() throws IOException {
+        LineMetrics expected = scanner.scan(new StringReader(CONSTRUCTS_SOURCE.substring(1)));
+        assertEquals(new LineMetrics(13, 1, 5, 5), expected);
+
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16}) {
+            File file = temporaryFolder.newFile();
+            String source = charset.equals(StandardCharsets.UTF_8) ? CONSTRUCTS_SOURCE : CONSTRUCTS_SOURCE.substring(1);
+            Files.write(file.toPath(), source.getBytes(charset));
+            assertEquals(charset.name(), expected, scanner.scan(file, charset));
+        }
+    }
+
+    @Test
+    public void testScanMappedFile() throws IOException {
+        StringBuilder source = new StringBuilder();
+        while (source.length() <= LineMetricsScanner.MAPPING_THRESHOLD) {
+            source.append(CONSTRUCTS_SOURCE.substring(1, CONSTRUCTS_SOURCE.indexOf("__END__")));
+        }
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(scanner.scan(new StringReader(source.toString())), scanner.scan(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDigestsBytesScanned() throws Exception {
+        StringBuilder large = new StringBuilder();
+        while (large.length() <= LineMetricsScanner.MAPPING_THRESHOLD) {
+            large.append(CONSTRUCTS_SOURCE, 1, CONSTRUCTS_SOURCE.indexOf("__END__"));
+        }
+        for (String source : new String[]{CONSTRUCTS_SOURCE, large.toString()}) {
+            for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+                File file = temporaryFolder.newFile();
+                Files.write(file.toPath(), source.getBytes(charset));
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                scanner.scan(file, charset, digest);
+
+                assertArrayEquals(charset.name(), MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath())), digest.digest());
+            }
+        }
+    }
+
+    @Test
+    public void testAsciiCompatibleEncodings() {
+        assertTrue(LineMetricsScanner.isAsciiCompatible(StandardCharsets.UTF_8));
+        assertTrue(LineMetricsScanner.isAsciiCompatible(StandardCharsets.ISO_8859_1));
+        assertTrue(LineMetricsScanner.isAsciiCompatible(Charset.forName("windows-1252")));
+        assertFalse(LineMetricsScanner.isAsciiCompatible(StandardCharsets.UTF_16));
+        assertFalse(LineMetricsScanner.isAsciiCompatible(Charset.forName("Shift_JIS")));
+    }
+}
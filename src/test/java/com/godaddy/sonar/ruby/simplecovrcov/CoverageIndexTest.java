@@ -0,0 +1,67 @@
+package com.godaddy.sonar.ruby.simplecovrcov;
+
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.measures.CoverageMeasuresBuilder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CoverageIndexTest {
+    private File baseDir = new File("/workspace/project");
+
+    @Test
+    public void testMatchesFilesUnderBaseDir() throws Exception {
+        Map<String, CoverageMeasuresBuilder> coveredFiles = new HashMap<>();
+        CoverageMeasuresBuilder model = addCoverage("/workspace/project/app/models/user.rb", coveredFiles);
+        addCoverage("/opt/gems/lib/gem.rb", coveredFiles);
+
+        CoverageIndex coverageIndex = new CoverageIndex(coveredFiles, baseDir, new String[0]);
+
+        assertEquals(2, coverageIndex.size());
+        assertSame(model, coverageIndex.get(inputFile("app/models/user.rb")));
+        assertNull(coverageIndex.get(inputFile("lib/gem.rb")));
+        assertNull(coverageIndex.get(inputFile("app/models/missing.rb")));
+    }
+
+    @Test
+    public void testMapsRelocatedRoots() throws Exception {
+        Map<String, CoverageMeasuresBuilder> coveredFiles = new HashMap<>();
+        CoverageMeasuresBuilder model = addCoverage("/usr/src/app/app/models/user.rb", coveredFiles);
+        CoverageMeasuresBuilder engine = addCoverage("/usr/src/app/engines/billing/lib/invoice.rb", coveredFiles);
+        CoverageMeasuresBuilder windows = addCoverage("C:\\build\\app\\helpers\\./format.rb", coveredFiles);
+
+        CoverageIndex coverageIndex = new CoverageIndex(coveredFiles, baseDir, new String[]{
+                "/usr/src/app=", "/usr/src/app/engines/billing=vendor/billing", "C:/build/="
+        });
+
+        assertSame(model, coverageIndex.get(inputFile("app/models/user.rb")));
+        assertSame(engine, coverageIndex.get(inputFile("vendor/billing/lib/invoice.rb")));
+        assertSame(windows, coverageIndex.get(inputFile("app/helpers/format.rb")));
+    }
+
+    @Test
+    public void testNormalizesPaths() throws Exception {
+        assertEquals("/usr/src/app/lib/a.rb", CoverageIndex.normalize("/usr/src//app/./bin/../lib/a.rb"));
+        assertEquals("app/models/a.rb", CoverageIndex.normalize("app\\models\\a.rb"));
+        assertEquals("/usr/src/app", CoverageIndex.normalize("/usr/src/app/"));
+    }
+
+    private CoverageMeasuresBuilder addCoverage(String path, Map<String, CoverageMeasuresBuilder> coveredFiles) {
+        CoverageMeasuresBuilder builder = CoverageMeasuresBuilder.create();
+        coveredFiles.put(path, builder);
+        return builder;
+    }
+
+    private InputFile inputFile(String relativePath) {
+        return new DefaultInputFile("modulekey", relativePath)
+                .setModuleBaseDir(baseDir.toPath())
+                .setType(InputFile.Type.MAIN);
+    }
+}
@@ -6,14 +6,18 @@ import org.sonar.api.measures.CoverageMeasuresBuilder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CoverageReportFileAnalyzerTest {
     private final static String VALID_JSON_FILE_NAME = "src/test/resources/test-data/simple_cov_results.json";
     private final static String MULTIPLE_SUITES_FILE_NAME = "src/test/resources/test-data/simple_cov_results_multiple_suites.json";
+    private final static String BRANCHES_FILE_NAME = "src/test/resources/test-data/simple_cov_results_branches.json";
+    private final static String BRANCHES_LEGACY_FILE_NAME = "src/test/resources/test-data/simple_cov_results_branches_legacy.json";
 
     private CoverageReportFileAnalyzerImpl analyzer = null;
     private MockedCoverageSettings coverageSettings;
@@ -57,7 +61,7 @@ public class CoverageReportFileAnalyzerTest {
     @Test
     public void testParserWithSpecifiedSuites() throws IOException {
         this.coverageSettings.setProcessAllSuitesFlag(false);
-        this.coverageSettings.setConfiguredSuitesNamesList(Collections.singletonList("RSpec"));
+        this.coverageSettings.setConfiguredSuitesNamesSet(Collections.singleton("RSpec"));
         File reportFile = new File(MULTIPLE_SUITES_FILE_NAME);
         Map<String, CoverageMeasuresBuilder> coveredFiles = analyzer.analyze(reportFile);
         String coveredFile = "/project/source/subdir/file.rb";
@@ -66,4 +70,55 @@ public class CoverageReportFileAnalyzerTest {
         CoverageMeasuresBuilder builder = coveredFiles.get(coveredFile);
         assertEquals(11, builder.getCoveredLines());
     }
+
+    @Test
+    public void testParserMergesSeveralReports() throws IOException {
+        File reportFile = new File(VALID_JSON_FILE_NAME);
+        Map<String, CoverageMeasuresBuilder> singleReport = analyzer.analyze(reportFile);
+        Map<String, CoverageMeasuresBuilder> mergedReports = analyzer.analyze(Arrays.asList(reportFile, reportFile, reportFile));
+
+        assertEquals(singleReport.keySet(), mergedReports.keySet());
+        for (Map.Entry<String, CoverageMeasuresBuilder> entry : singleReport.entrySet()) {
+            CoverageMeasuresBuilder merged = mergedReports.get(entry.getKey());
+            assertEquals(entry.getValue().getLinesToCover(), merged.getLinesToCover());
+            assertEquals(entry.getValue().getCoveredLines(), merged.getCoveredLines());
+            for (Map.Entry<Integer, Integer> hits : entry.getValue().getHitsByLine().entrySet()) {
+                assertEquals(Integer.valueOf(3 * hits.getValue()), merged.getHitsByLine().get(hits.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testParserWithBranches() throws IOException {
+        this.coverageSettings.setProcessAllSuitesFlag(true);
+        Map<String, CoverageMeasuresBuilder> coveredFiles = analyzer.analyze(new File(BRANCHES_FILE_NAME));
+        Map<String, CoverageMeasuresBuilder> legacyCoveredFiles = analyzer.analyze(new File(BRANCHES_LEGACY_FILE_NAME));
+
+        assertEquals(legacyCoveredFiles.keySet(), coveredFiles.keySet());
+        for (Map.Entry<String, CoverageMeasuresBuilder> entry : legacyCoveredFiles.entrySet()) {
+            assertEquals(entry.getValue().getHitsByLine(), coveredFiles.get(entry.getKey()).getHitsByLine());
+            assertTrue(entry.getValue().getConditionsByLine().isEmpty());
+        }
+
+        CoverageMeasuresBuilder builder = coveredFiles.get("/project/source/subdir/file.rb");
+        assertEquals(5, builder.getCoveredLines());
+        assertEquals(Integer.valueOf(2), builder.getConditionsByLine().get(2));
+        assertEquals(Integer.valueOf(1), builder.getCoveredConditionsByLine().get(2));
+        assertEquals(Integer.valueOf(2), builder.getConditionsByLine().get(4));
+        assertEquals(Integer.valueOf(2), builder.getCoveredConditionsByLine().get(4));
+        assertTrue(coveredFiles.get("/project/source/subdir/file1.rb").getConditionsByLine().isEmpty());
+    }
+
+    @Test
+    public void testParserWithBranchesOfSpecifiedSuites() throws IOException {
+        this.coverageSettings.setProcessAllSuitesFlag(false);
+        this.coverageSettings.setConfiguredSuitesNamesSet(Collections.singleton("RSpec"));
+        Map<String, CoverageMeasuresBuilder> coveredFiles = analyzer.analyze(new File(BRANCHES_FILE_NAME));
+
+        assertEquals(1, coveredFiles.size());
+        CoverageMeasuresBuilder builder = coveredFiles.get("/project/source/subdir/file.rb");
+        assertEquals(3, builder.getCoveredLines());
+        assertEquals(Integer.valueOf(0), builder.getCoveredConditionsByLine().get(2));
+        assertEquals(Integer.valueOf(1), builder.getCoveredConditionsByLine().get(4));
+    }
 }
@@ -2,12 +2,21 @@ package com.godaddy.sonar.ruby.simplecovrcov;
 
 import com.godaddy.sonar.ruby.simplecovrcov.data.CoverageReport;
 import com.godaddy.sonar.ruby.simplecovrcov.data.Reporter;
+import com.godaddy.sonar.ruby.simplecovrcov.data.ReporterItem;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -17,6 +26,9 @@ import static org.junit.Assert.*;
 public class CoverageReportFileParserTest {
     private final static String COVERAGE_REPORT_FILE_NAME = "src/test/resources/test-data/simple_cov_results_multiple_suites.json";
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     private CoverageReport coverageReport;
 
     @Before
@@ -43,4 +55,77 @@ public class CoverageReportFileParserTest {
         assertEquals("RSpec", coverageReport2.getName());
         assertEquals(1, coverageReport2.getItems().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStreamsHitsIntoConsumerAccumulators() throws IOException {
+        Map<String, LineHits> hitsByFile = new HashMap<>();
+        List<String> visitedSuites = new ArrayList<>();
+        new CoverageReportFileParser(new File(COVERAGE_REPORT_FILE_NAME)).parse((suiteName, filename) -> {
+            visitedSuites.add(suiteName);
+            return hitsByFile.computeIfAbsent(filename, name -> new LineHits());
+        });
+
+        assertEquals(Arrays.asList("MiniTest", "RSpec"), visitedSuites);
+        assertEquals(1, hitsByFile.size());
+        LineHits lineHits = hitsByFile.get("/project/source/subdir/file.rb");
+        assertEquals(1, lineHits.get(1));
+        assertEquals(-1, lineHits.get(3));
+        assertEquals(2, lineHits.get(6));
+    }
+
+    @Test
+    public void testSkipsFilesWithoutAccumulator() throws IOException {
+        LineHits rspecHits = new LineHits();
+        new CoverageReportFileParser(new File(COVERAGE_REPORT_FILE_NAME)).parse((suiteName, filename) ->
+                "RSpec".equals(suiteName) ? rspecHits : null);
+
+        assertEquals(-1, rspecHits.get(1));
+        assertEquals(1, rspecHits.get(6));
+    }
+
+    @Test
+    public void testSkipsSuitesNotSelected() throws IOException {
+        Map<String, LineHits> hitsByFile = new HashMap<>();
+        List<String> visitedSuites = new ArrayList<>();
+        new CoverageReportFileParser(new File(COVERAGE_REPORT_FILE_NAME)).parse("RSpec"::equals, (suiteName, filename) -> {
+            visitedSuites.add(suiteName);
+            return hitsByFile.computeIfAbsent(filename, name -> new LineHits());
+        });
+
+        assertEquals(Arrays.asList("RSpec"), visitedSuites);
+        LineHits lineHits = hitsByFile.get("/project/source/subdir/file.rb");
+        assertEquals(-1, lineHits.get(1));
+        assertEquals(1, lineHits.get(6));
+    }
+
+    @Test
+    public void testParsesLinesOfBranchCoverageFormat() throws IOException {
+        CoverageReport branchesReport = new CoverageReportFileParser(
+                new File("src/test/resources/test-data/simple_cov_results_branches.json")).parse();
+
+        Reporter reporter = branchesReport.getReporters().iterator().next();
+        assertEquals(2, reporter.getItems().size());
+        ReporterItem item = reporter.getItems().iterator().next();
+        assertEquals(8, item.getLinesCount());
+        assertEquals(ReporterItem.NULL_HITS, item.getHits(2));
+        assertEquals(0, item.getHits(4));
+    }
+
+    @Test
+    public void testClampsHitsAboveIntRange() throws IOException {
+        File reportFile = temp.newFile("resultset.json");
+        FileUtils.write(reportFile, "{\"RSpec\": {\"coverage\": {\"file.rb\": {"
+                + "\"lines\": [3000000000, null, 1],"
+                + "\"branches\": {\"[:if, 0, 3, 4, 3, 21]\": {\"[:then, 1, 3, 4, 3, 10]\": 3000000000, \"[:else, 2, 3, 4, 3, 21]\": 0}}"
+                + "}}}}", "UTF-8");
+
+        LineHits lineHits = new LineHits();
+        new CoverageReportFileParser(reportFile).parse((suiteName, filename) -> lineHits);
+        assertEquals(Integer.MAX_VALUE, lineHits.get(1));
+        assertEquals(-1, lineHits.get(2));
+        assertEquals(1, lineHits.get(3));
+
+        ReporterItem item = new CoverageReportFileParser(reportFile).parse().getReporters().iterator().next().getItems().iterator().next();
+        assertEquals(Integer.MAX_VALUE, item.getHits(0));
+    }
+}
@@ -5,7 +5,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
 
-import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -49,7 +49,7 @@ public class DefaultCoverageSettingsTest {
     @Test
     public void testConfiguredSuitesNamesWhenPropertyContainsSomeOtherValue() {
         settings.setProperty(RubyPlugin.COVERAGE_TEST_SUITES_PROPERTY, "MiniSpec,RSpec");
-        List<String> suites = defaultCoverageSettings.configuredSuitesNames();
+        Set<String> suites = defaultCoverageSettings.configuredSuitesNames();
         assertFalse(suites.isEmpty());
         assertTrue(suites.contains("MiniSpec"));
         assertTrue(suites.contains("RSpec"));
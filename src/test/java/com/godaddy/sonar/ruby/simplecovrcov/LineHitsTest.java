@@ -0,0 +1,82 @@
+package com.godaddy.sonar.ruby.simplecovrcov;
+
+import org.junit.Test;
+import org.sonar.api.measures.CoverageMeasuresBuilder;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineHitsTest {
+    @Test
+    public void testSumsHitsOfSameLine() throws Exception {
+        LineHits lineHits = new LineHits();
+        lineHits.add(3, 2);
+        lineHits.add(3, 5);
+        lineHits.add(1, 0);
+
+        assertEquals(7, lineHits.get(3));
+        assertEquals(0, lineHits.get(1));
+        assertEquals(-1, lineHits.get(2));
+        assertEquals(-1, lineHits.get(1000));
+    }
+
+    @Test
+    public void testGrowsForLongFiles() throws Exception {
+        LineHits lineHits = new LineHits();
+        for (int lineNumber = 1; lineNumber <= 4000; lineNumber++) {
+            lineHits.add(lineNumber, lineNumber % 2);
+        }
+        lineHits.add(4000, 1);
+
+        CoverageMeasuresBuilder builder = lineHits.toCoverageMeasuresBuilder();
+        assertEquals(4000, builder.getLinesToCover());
+        assertEquals(2001, builder.getCoveredLines());
+        assertEquals(Integer.valueOf(1), builder.getHitsByLine().get(4000));
+    }
+
+    @Test
+    public void testBuildsOnlyRelevantLines() throws Exception {
+        LineHits lineHits = new LineHits();
+        lineHits.add(2, 1);
+        lineHits.add(5, 0);
+
+        CoverageMeasuresBuilder builder = lineHits.toCoverageMeasuresBuilder();
+        assertEquals(2, builder.getLinesToCover());
+        assertEquals(1, builder.getCoveredLines());
+    }
+
+    @Test
+    public void testAddsAllHitsOfAnotherFile() throws Exception {
+        LineHits lineHits = new LineHits();
+        lineHits.add(1, 2);
+        lineHits.add(3, 0);
+        LineHits other = new LineHits();
+        other.add(1, 1);
+        other.add(200, 4);
+
+        lineHits.addAll(other);
+
+        assertEquals(3, lineHits.get(1));
+        assertEquals(-1, lineHits.get(2));
+        assertEquals(0, lineHits.get(3));
+        assertEquals(4, lineHits.get(200));
+    }
+
+    @Test
+    public void testCountsConditionsFromBranches() throws Exception {
+        LineHits lineHits = new LineHits();
+        lineHits.add(3, 1);
+        lineHits.addBranch(1, 3, 0);
+        lineHits.addBranch(2, 3, 4);
+        lineHits.addBranch(40, 10, 0);
+        LineHits other = new LineHits();
+        other.addBranch(1, 3, 1);
+
+        lineHits.addAll(other);
+
+        CoverageMeasuresBuilder builder = lineHits.toCoverageMeasuresBuilder();
+        assertEquals(Integer.valueOf(2), builder.getConditionsByLine().get(3));
+        assertEquals(Integer.valueOf(2), builder.getCoveredConditionsByLine().get(3));
+        assertEquals(Integer.valueOf(1), builder.getConditionsByLine().get(10));
+        assertEquals(Integer.valueOf(0), builder.getCoveredConditionsByLine().get(10));
+    }
+}
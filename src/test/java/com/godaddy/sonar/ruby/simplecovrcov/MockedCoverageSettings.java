@@ -1,22 +1,22 @@
 package com.godaddy.sonar.ruby.simplecovrcov;
 
 import java.util.Collections;
-import java.util.List;
+import java.util.Set;
 
 /**
  * Created by sergio on 3/27/17.
  */
 public class MockedCoverageSettings implements CoverageSettings {
     private Boolean processAllSuitesFlag;
-    private List<String> configuredSuitesNamesList;
+    private Set<String> configuredSuitesNamesSet;
 
     public MockedCoverageSettings() {
-        this(true, Collections.emptyList());
+        this(true, Collections.emptySet());
     }
 
-    public MockedCoverageSettings(Boolean processAllSuitesFlag, List<String> configuredSuitesNamesList) {
+    public MockedCoverageSettings(Boolean processAllSuitesFlag, Set<String> configuredSuitesNamesSet) {
         this.processAllSuitesFlag = processAllSuitesFlag;
-        this.configuredSuitesNamesList = configuredSuitesNamesList;
+        this.configuredSuitesNamesSet = configuredSuitesNamesSet;
     }
 
     @Override
@@ -25,15 +25,15 @@ public class MockedCoverageSettings implements CoverageSettings {
     }
 
     @Override
-    public List<String> configuredSuitesNames() {
-        return this.configuredSuitesNamesList;
+    public Set<String> configuredSuitesNames() {
+        return this.configuredSuitesNamesSet;
     }
 
     public void setProcessAllSuitesFlag(Boolean processAllSuitesFlag) {
         this.processAllSuitesFlag = processAllSuitesFlag;
     }
 
-    public void setConfiguredSuitesNamesList(List<String> configuredSuitesNamesList) {
-        this.configuredSuitesNamesList = configuredSuitesNamesList;
+    public void setConfiguredSuitesNamesSet(Set<String> configuredSuitesNamesSet) {
+        this.configuredSuitesNamesSet = configuredSuitesNamesSet;
     }
 }
@@ -2,8 +2,11 @@ package com.godaddy.sonar.ruby.simplecovrcov;
 
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
+import com.godaddy.sonar.ruby.RubyPlugin;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.config.Settings;
@@ -12,9 +15,12 @@ import org.sonar.api.scan.filesystem.PathResolver;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -22,6 +28,9 @@ public class SimpleCovRcovSensorTest {
     private static String RESULT_JSON_FILE_MUTLI_SRC_DIR = "src/test/resources/test-data/results.json";
     private static String RESULT_JSON_FILE_ONE_SRC_DIR = "src/test/resources/test-data/results-one-src-dir.json";
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private IMocksControl mocksControl;
 
     private PathResolver pathResolver;
@@ -67,4 +76,26 @@ public class SimpleCovRcovSensorTest {
         assertTrue(true);
     }
 
+    @Test
+    public void testFindsReportsMatchingGlobs() throws IOException {
+        File baseDir = temporaryFolder.getRoot();
+        File firstShard = newReport("coverage/shard-1/.resultset.json");
+        File secondShard = newReport("coverage/shard-2/.resultset.json");
+        File merged = newReport("merged.json");
+        newReport("coverage/shard-3/other.json");
+
+        settings.setProperty(RubyPlugin.SIMPLECOVRCOV_REPORT_PATH_PROPERTY,
+                "coverage/shard-*/.resultset.json, missing.json, merged.json");
+        SimpleCovRcovSensor sensor = new SimpleCovRcovSensor(settings, fs, new PathResolver(), coverageReportFileAnalyzer);
+
+        List<File> reports = sensor.findReports(baseDir);
+        assertEquals(Arrays.asList(firstShard, secondShard, merged), reports);
+    }
+
+    private File newReport(String path) throws IOException {
+        File report = new File(temporaryFolder.getRoot(), path);
+        report.getParentFile().mkdirs();
+        report.createNewFile();
+        return report.getCanonicalFile();
+    }
 }
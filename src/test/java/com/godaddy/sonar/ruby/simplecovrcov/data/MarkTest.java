@@ -22,4 +22,14 @@ public class MarkTest {
 
         assert mark.getAsLong() == 1;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGettersOfHitsMark() throws Exception {
+        Mark mark = new Mark(5, false);
+
+        assertEquals(mark.getIsNull(), false);
+        assertEquals(mark.getRawValue(), "5");
+        assert mark.getAsLong() == 5;
+        assertEquals(new Mark("5", false), mark);
+    }
+}
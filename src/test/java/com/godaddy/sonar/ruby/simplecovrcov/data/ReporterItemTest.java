@@ -3,7 +3,13 @@ package com.godaddy.sonar.ruby.simplecovrcov.data;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by sergio on 2/8/17.
@@ -18,4 +24,36 @@ public class ReporterItemTest {
         assert reporterItem.getFilename().equals(filename);
         assert reporterItem.getMarks().equals(marks);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testKeepsMarksAsHits() throws Exception {
+        Collection<Mark> marks = Arrays.asList(new Mark("3", false), new Mark("null", true), new Mark("0", false));
+        ReporterItem reporterItem = new ReporterItem("some/file", marks);
+
+        assertEquals(3, reporterItem.getLinesCount());
+        assertEquals(3, reporterItem.getHits(0));
+        assertEquals(ReporterItem.NULL_HITS, reporterItem.getHits(1));
+        assertEquals(0, reporterItem.getHits(2));
+        assertEquals(marks, reporterItem.getMarks());
+    }
+
+    @Test
+    public void testProvidesMarksViewOverHits() throws Exception {
+        ReporterItem reporterItem = new ReporterItem("some/file", new int[]{ReporterItem.NULL_HITS, 2, 0, 0}, 2);
+        List<Mark> marks = new ArrayList<>(reporterItem.getMarks());
+
+        assertEquals(2, marks.size());
+        assertTrue(marks.get(0).getIsNull());
+        assertFalse(marks.get(1).getIsNull());
+        assertEquals(Long.valueOf(2), marks.get(1).getAsLong());
+        assertEquals("2", marks.get(1).getRawValue());
+    }
+
+    @Test
+    public void testKeepsFilenameOfItemWithoutMarks() throws Exception {
+        ReporterItem reporterItem = new ReporterItem("some/file");
+
+        assertEquals("some/file", reporterItem.getFilename());
+        assertTrue(reporterItem.getMarks().isEmpty());
+    }
+}